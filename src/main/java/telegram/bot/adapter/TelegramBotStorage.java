@@ -1,13 +1,31 @@
 package telegram.bot.adapter;
 
+import telegram.bot.model.Event;
 import telegram.bot.model.Participation;
+import telegram.bot.model.Vacancies;
 import telegram.bot.model.Volunteer;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface TelegramBotStorage {
 
+    /**
+     * Готовность хранилища: завершается, когда данные загружены и хранилище может отвечать на запросы
+     *
+     * @return Завершенный успешно, если данные загружены; завершенный с ошибкой, если загрузка не удалась
+     */
+    default CompletableFuture<Void> getReadiness() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // состояние кэша для мониторинга
+    default Map<String, Object> getCacheDetails() {
+        return Map.of();
+    }
+
     /**
      * Записываем нового участника
      *
@@ -37,6 +55,14 @@ public interface TelegramBotStorage {
      */
     Volunteer getVolunteerByCode(String code);
 
+    /**
+     * Получаем участника по его id в телеграме
+     *
+     * @param tgUserId - id пользователя в телеграме
+     * @return Пользователь по id в телеграме
+     */
+    Volunteer getVolunteerByTgUserId(Long tgUserId);
+
     /**
      * Получаем всех участников
      *
@@ -65,6 +91,72 @@ public interface TelegramBotStorage {
      */
     List<Participation> getAvailableParticipationByDate(LocalDate date);
 
+    /**
+     * Получаем список свободных позиций на дату среди основных ролей
+     *
+     * @param date - Дата, за которую хотим получить список позиций
+     * @return - Список свободных основных позиций на указанную дату
+     */
+    List<Participation> getAvailableMainParticipationByDate(LocalDate date);
+
+    /**
+     * Получаем список свободных позиций на дату среди прочих (не основных) ролей
+     *
+     * @param date - Дата, за которую хотим получить список позиций
+     * @return - Список свободных прочих позиций на указанную дату
+     */
+    List<Participation> getAvailableOtherParticipationByDate(LocalDate date);
+
+    /**
+     * Получаем свободные позиции на дату, разделенные на основные и прочие роли, за один вызов
+     *
+     * @param date - Дата, за которую хотим получить список позиций
+     * @return - Свободные основные и прочие позиции, посчитанные для текущего поколения кэша
+     */
+    Vacancies getVacanciesByDate(LocalDate date);
+
+    /**
+     * Получаем список занятых позиций на дату
+     *
+     * @param date - Дата, за которую хотим получить список участников
+     * @return - Список позиций, на которые уже записаны волонтеры
+     */
+    List<Participation> getOccupiedParticipationByDate(LocalDate date);
+
+    /**
+     * Получаем ближайшие события, начиная с даты
+     *
+     * @param from  - Дата, начиная с которой (включительно) ищем события
+     * @param limit - Сколько событий вернуть
+     * @return - События по возрастанию даты
+     */
+    List<Event> getUpcomingEvents(LocalDate from, int limit);
+
+    /**
+     * Получаем события за период
+     *
+     * @param from - Начало периода (включительно)
+     * @param to   - Конец периода (включительно)
+     * @return - События по возрастанию даты; пустой список, если начало позже конца
+     */
+    List<Event> getEventsBetween(LocalDate from, LocalDate to);
+
+    /**
+     * Получаем последнее (самое позднее) событие
+     *
+     * @return - Последнее событие или null, если событий нет
+     */
+    Event getLastEvent();
+
+    /**
+     * Получаем позицию на дату по номеру строки
+     *
+     * @param date           - Дата события
+     * @param sheetRowNumber - номер строки позиции в таблице на закладке "Волонтеры"
+     * @return - Позиция или null, если такой строки нет
+     */
+    Participation getParticipation(LocalDate date, int sheetRowNumber);
+
     /**
      * Записываем участие
      *
@@ -74,6 +166,15 @@ public interface TelegramBotStorage {
      */
     Participation saveParticipation(Participation participation);
 
+    /**
+     * Занимаем свободную позицию: позиция достается волонтеру, только если на нее еще никто не записан.
+     * Если позицию уже занял другой волонтер, отказ возвращается сразу, без обращения к таблице
+     *
+     * @param participation - участие с волонтером, датой и номером строки позиции
+     * @return Возвращаем записанное участие или null, если позиция занята или запись в таблицу не удалась
+     */
+    Participation reserveParticipation(Participation participation);
+
     /**
      * Отменяем участие
      *
@@ -4,21 +4,27 @@ import lombok.extern.slf4j.Slf4j;
 import telegram.bot.service.utils.AESUtil;
 import telegram.bot.storage.LocalExcelUtils;
 import telegram.bot.storage.Storage;
-import telegram.bot.storage.google.GoogleSheetUtils;
+import telegram.bot.storage.StorageUtils;
+import telegram.bot.storage.WarmStartSnapshotFile;
 
 @Slf4j
 public class TelegramBotStorageGoogleTableImpl extends Storage {
     private final LocalExcelUtils localExcelUtils;
 
-    public TelegramBotStorageGoogleTableImpl(GoogleSheetUtils googleSheetUtils, LocalExcelUtils localExcelUtils, AESUtil aesUtil) {
+    public TelegramBotStorageGoogleTableImpl(StorageUtils googleSheetUtils, LocalExcelUtils localExcelUtils, AESUtil aesUtil) {
+        this(googleSheetUtils, localExcelUtils, aesUtil, null);
+    }
+
+    public TelegramBotStorageGoogleTableImpl(StorageUtils googleSheetUtils, LocalExcelUtils localExcelUtils, AESUtil aesUtil, WarmStartSnapshotFile warmStartFile) {
         this.storageUtils = googleSheetUtils;
         this.localExcelUtils = localExcelUtils;
         this.aesUtil = aesUtil;
+        this.warmStartFile = warmStartFile;
     }
 
     @Override
     public void loadDataFromStorage() {
         super.loadDataFromStorage();
-        //localExcelUtils.initExcelFile(contacts, events);
+        //localExcelUtils.initExcelFile(snapshot.getContacts(), snapshot.getEvents());
     }
 }
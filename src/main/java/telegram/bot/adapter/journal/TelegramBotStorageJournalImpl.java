@@ -0,0 +1,51 @@
+package telegram.bot.adapter.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import telegram.bot.service.utils.AESUtil;
+import telegram.bot.storage.JournalStorageUtils;
+import telegram.bot.storage.Storage;
+import telegram.bot.storage.StorageUtils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+public class TelegramBotStorageJournalImpl extends Storage {
+    private final JournalStorageUtils journalStorageUtils;
+    // таблица, в которую выгружается журнал (отчет, а не основное хранилище)
+    private final StorageUtils reportStorageUtils;
+
+    public TelegramBotStorageJournalImpl(JournalStorageUtils journalStorageUtils, StorageUtils reportStorageUtils, AESUtil aesUtil, long exportIntervalMilliSec) {
+        this.storageUtils = journalStorageUtils;
+        this.journalStorageUtils = journalStorageUtils;
+        this.reportStorageUtils = reportStorageUtils;
+        this.aesUtil = aesUtil;
+        if (exportIntervalMilliSec > 0) {
+            var exportExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "journal-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+            exportExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    exportToSpreadsheet();
+                } catch (RuntimeException e) {
+                    log.error("Error exporting journal", e);
+                }
+            }, exportIntervalMilliSec, exportIntervalMilliSec, TimeUnit.MILLISECONDS);
+        }
+        // при остановке таблица всегда получает итоговое состояние журнала, даже если выгрузка по таймеру выключена
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                exportToSpreadsheet();
+            } catch (RuntimeException e) {
+                log.error("Error exporting journal on shutdown", e);
+            }
+        }, "journal-export-shutdown"));
+    }
+
+    // выгружает текущее состояние журнала в таблицу
+    public void exportToSpreadsheet() {
+        journalStorageUtils.exportTo(reportStorageUtils);
+    }
+}
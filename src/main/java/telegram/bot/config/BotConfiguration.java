@@ -7,14 +7,20 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 import telegram.bot.adapter.TelegramBotStorage;
 import telegram.bot.adapter.google.TelegramBotStorageGoogleTableImpl;
+import telegram.bot.adapter.journal.TelegramBotStorageJournalImpl;
 import telegram.bot.adapter.local.TelegramBotStorageLocalDBImpl;
 import telegram.bot.service.utils.AESUtil;
+import telegram.bot.storage.JournalStorageUtils;
 import telegram.bot.storage.LocalExcelUtils;
 import telegram.bot.storage.Storage;
+import telegram.bot.storage.StorageUtils;
+import telegram.bot.storage.WarmStartSnapshotFile;
+import telegram.bot.storage.WriteBehindStorageUtils;
 import telegram.bot.storage.google.GoogleConnection;
 import telegram.bot.storage.google.GoogleSheetUtils;
 
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 @Slf4j
 @Configuration
@@ -27,9 +33,23 @@ public class BotConfiguration {
      */
     private static BotStorageMode botStorageMode;
     private static long BOT_STORAGE_SHEET_SYNC_INTERVAL_ms;
+    private static long BOT_STORAGE_CACHE_FRESHNESS_ms;
+    private static boolean GOOGLE_DRIVE_CHANGES_FEED;
+    private static long STORAGE_WRITE_BEHIND_FLUSH_INTERVAL_ms;
+    private static int STORAGE_WRITE_BEHIND_FLUSH_THRESHOLD;
+    private static long LOCAL_EXCEL_FLUSH_INTERVAL_ms;
+    private static int LOCAL_EXCEL_FLUSH_THRESHOLD;
+    private static String JOURNAL_DIR;
+    private static long JOURNAL_FSYNC_INTERVAL_ms;
+    private static long JOURNAL_COMPACTION_THRESHOLD_bytes;
+    private static long JOURNAL_EXPORT_INTERVAL_ms;
+    private static int TELEGRAM_UPDATE_THREADS;
+    private static int TELEGRAM_UPDATE_QUEUE_CAPACITY;
     private static String GOOGLE_APPLICATION_NAME;
     private static String GOOGLE_SERVICE_ACCOUNT_KEY_PATH;
-    private static long GOOGLE_API_PAUSE_LONG;
+    private static long GOOGLE_API_SHEETS_READ_REQUESTS_PER_MINUTE;
+    private static long GOOGLE_API_SHEETS_WRITE_REQUESTS_PER_MINUTE;
+    private static long GOOGLE_API_DRIVE_REQUESTS_PER_MINUTE;
     private static String GOOGLE_SHEET_ID;
     private static String SHEET_VOLUNTEERS;
     private static String SHEET_VOLUNTEERS_ROLES_ORGANIZER_NAME;
@@ -43,6 +63,7 @@ public class BotConfiguration {
     private static int SHEET_VOLUNTEERS_EVENT_COLUMN_START;
     private static int SHEET_VOLUNTEERS_EVENT_ROW;
     private static int SHEET_SATURDAYS_AHEAD;
+    private static int SHEET_SATURDAYS_BEHIND;
     private static String SHEET_USERID_CRYPT_PASS;
     private static String SHEET_USERID_CRYPT_SALT;
     public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
@@ -50,26 +71,68 @@ public class BotConfiguration {
     @Value("${local.excel.file.path}")
     String LOCAL_EXCEL_FILE_PATH;
 
+    // файл быстрого старта для режима GOOGLE; пустое значение - загрузка из таблицы при каждом старте
+    @Value("${bot.storage.warm.start.file:warm-start.bin}")
+    String BOT_STORAGE_WARM_START_FILE;
+
+    // файл очереди отложенной записи: принятые, но еще не отправленные в таблицу записи переживают перезапуск
+    @Value("${storage.write.behind.log:write-behind.log}")
+    String STORAGE_WRITE_BEHIND_LOG;
+
     @Bean
     public TelegramBotStorage getTelegramBotStorage() {
         Storage telegramBotStorage;
 
         if (botStorageMode == BotStorageMode.GOOGLE)
-            telegramBotStorage = new TelegramBotStorageGoogleTableImpl(new GoogleSheetUtils(new GoogleConnection()), new LocalExcelUtils(LOCAL_EXCEL_FILE_PATH), new AESUtil());
-        else if (botStorageMode == BotStorageMode.LOCAL)
-            telegramBotStorage = new TelegramBotStorageLocalDBImpl(new LocalExcelUtils(LOCAL_EXCEL_FILE_PATH), new AESUtil());
-        else throw new RuntimeException("error choosing Storage");
+            telegramBotStorage = new TelegramBotStorageGoogleTableImpl(
+                    withWriteBehind(new GoogleSheetUtils(new GoogleConnection())),
+                    new LocalExcelUtils(LOCAL_EXCEL_FILE_PATH),
+                    new AESUtil(),
+                    BOT_STORAGE_WARM_START_FILE.isBlank() ? null : new WarmStartSnapshotFile(BOT_STORAGE_WARM_START_FILE));
+        else if (botStorageMode == BotStorageMode.LOCAL) {
+            var localExcelUtils = new LocalExcelUtils(LOCAL_EXCEL_FILE_PATH, LOCAL_EXCEL_FLUSH_INTERVAL_ms, LOCAL_EXCEL_FLUSH_THRESHOLD);
+            // резидентная книга сама копит изменения в памяти, отложенная запись поверх нее не нужна
+            telegramBotStorage = new TelegramBotStorageLocalDBImpl(localExcelUtils.isResident() ? localExcelUtils : withWriteBehind(localExcelUtils), new AESUtil());
+        } else if (botStorageMode == BotStorageMode.JOURNAL) {
+            var localExcelUtils = new LocalExcelUtils(LOCAL_EXCEL_FILE_PATH);
+            var journalStorageUtils = new JournalStorageUtils(JOURNAL_DIR, JOURNAL_FSYNC_INTERVAL_ms, JOURNAL_COMPACTION_THRESHOLD_bytes);
+            // при первом запуске журнал заполняется из локальной таблицы, дальше таблица только получает выгрузки
+            if (journalStorageUtils.isEmpty())
+                journalStorageUtils.importFrom(localExcelUtils, List.of(SHEET_CONTACTS, SHEET_ROLES, SHEET_VOLUNTEERS));
+            telegramBotStorage = new TelegramBotStorageJournalImpl(journalStorageUtils, localExcelUtils, new AESUtil(), JOURNAL_EXPORT_INTERVAL_ms);
+        } else throw new RuntimeException("error choosing Storage");
 
-        telegramBotStorage.loadDataFromStorage();
+        // данные загружаются в фоне, готовность видна через getReadiness() и health-проверку
+        telegramBotStorage.startAsync();
 
         return telegramBotStorage;
     }
 
+    // при нулевом интервале запись в таблицу остается синхронной
+    private StorageUtils withWriteBehind(StorageUtils storageUtils) {
+        if (STORAGE_WRITE_BEHIND_FLUSH_INTERVAL_ms == 0) return storageUtils;
+        return new WriteBehindStorageUtils(storageUtils, STORAGE_WRITE_BEHIND_FLUSH_INTERVAL_ms, STORAGE_WRITE_BEHIND_FLUSH_THRESHOLD, STORAGE_WRITE_BEHIND_LOG);
+    }
+
     public BotConfiguration(@Value("${bot.storage.mode}") String bot_storage_mode,
                             @Value("${bot.storage.sheet.sync.interval.sec}") String bot_storage_sheet_sync_interval_sec,
+                            @Value("${bot.storage.cache.freshness.sec:-1}") String bot_storage_cache_freshness_sec,
+                            @Value("${google.drive.changes.feed:false}") String google_drive_changes_feed,
+                            @Value("${storage.write.behind.flush.interval.ms:1000}") String storage_write_behind_flush_interval_ms,
+                            @Value("${storage.write.behind.flush.threshold:50}") String storage_write_behind_flush_threshold,
+                            @Value("${local.excel.flush.interval.ms:5000}") String local_excel_flush_interval_ms,
+                            @Value("${local.excel.flush.threshold:100}") String local_excel_flush_threshold,
+                            @Value("${journal.dir:journal}") String journal_dir,
+                            @Value("${journal.fsync.interval.ms:200}") String journal_fsync_interval_ms,
+                            @Value("${journal.compaction.threshold.mb:16}") String journal_compaction_threshold_mb,
+                            @Value("${journal.export.interval.sec:0}") String journal_export_interval_sec,
+                            @Value("${telegram.update.threads:-1}") String telegram_update_threads,
+                            @Value("${telegram.update.queue.capacity:1000}") String telegram_update_queue_capacity,
                             @Value("${google.app.name}") String google_app_name,
                             @Value("${google.service.account.key}") String google_service_account_key,
-                            @Value("${google.api.pause.ms}") String google_api_pause_ms,
+                            @Value("${google.api.sheets.read.requests.per.minute:60}") String google_api_sheets_read_requests_per_minute,
+                            @Value("${google.api.sheets.write.requests.per.minute:60}") String google_api_sheets_write_requests_per_minute,
+                            @Value("${google.api.drive.requests.per.minute:600}") String google_api_drive_requests_per_minute,
                             @Value("${google.sheet.id}") String google_sheet_id,
                             @Value("${sheet.volunteers}") String sheet_volunteers,
                             @Value("${sheet.volunteers.role.organizer.name}") String sheet_volunteers_role_organizer_name,
@@ -83,18 +146,44 @@ public class BotConfiguration {
                             @Value("${sheet.volunteers.event.column.start}") String sheet_volunteers_event_column_start,
                             @Value("${sheet.volunteers.event.row}") String sheet_volunteers_event_row,
                             @Value("${sheet.saturdays.ahead}") String sheet_saturdays_ahead,
+                            @Value("${sheet.saturdays.behind:8}") String sheet_saturdays_behind,
                             @Value("${sheet.userid.crypt.pass}") String sheet_userid_crypt_pass,
                             @Value("${sheet.userid.crypt.salt}") String sheet_userid_crypt_salt) {
         if (bot_storage_mode.equals(BotStorageMode.GOOGLE.toString()))
             BotConfiguration.botStorageMode = BotStorageMode.GOOGLE;
         else if (bot_storage_mode.equals(BotStorageMode.LOCAL.toString()))
             BotConfiguration.botStorageMode = BotStorageMode.LOCAL;
+        else if (bot_storage_mode.equals(BotStorageMode.JOURNAL.toString()))
+            BotConfiguration.botStorageMode = BotStorageMode.JOURNAL;
 
         BOT_STORAGE_SHEET_SYNC_INTERVAL_ms = Long.parseLong(String.valueOf(bot_storage_sheet_sync_interval_sec)) * 1000;
+        // по умолчанию окно свежести - два интервала синхронизации, чтобы проверку успевал сделать SyncStorageRunner
+        BOT_STORAGE_CACHE_FRESHNESS_ms = Long.parseLong(bot_storage_cache_freshness_sec) >= 0
+                ? Long.parseLong(bot_storage_cache_freshness_sec) * 1000
+                : BOT_STORAGE_SHEET_SYNC_INTERVAL_ms * 2;
+        GOOGLE_DRIVE_CHANGES_FEED = Boolean.parseBoolean(google_drive_changes_feed);
+        STORAGE_WRITE_BEHIND_FLUSH_INTERVAL_ms = Long.parseLong(storage_write_behind_flush_interval_ms);
+        STORAGE_WRITE_BEHIND_FLUSH_THRESHOLD = Integer.parseInt(storage_write_behind_flush_threshold);
+        // LOCAL по умолчанию резидентный: бот - единственный, кто пишет в файл, и перечитывать/переписывать книгу
+        // на каждое обращение незачем. Цена - при аварийной остановке теряются изменения за последний интервал.
+        // 0 - каждая запись сохраняет файл (если включена отложенная запись - при сбросе ее очереди), чтение потоковое (StreamingExcelReader)
+        LOCAL_EXCEL_FLUSH_INTERVAL_ms = Long.parseLong(local_excel_flush_interval_ms);
+        LOCAL_EXCEL_FLUSH_THRESHOLD = Integer.parseInt(local_excel_flush_threshold);
+        JOURNAL_DIR = journal_dir;
+        JOURNAL_FSYNC_INTERVAL_ms = Long.parseLong(journal_fsync_interval_ms);
+        JOURNAL_COMPACTION_THRESHOLD_bytes = Long.parseLong(journal_compaction_threshold_mb) * 1024 * 1024;
+        JOURNAL_EXPORT_INTERVAL_ms = Long.parseLong(journal_export_interval_sec) * 1000;
+        // обработка обновлений в основном ждет Google и Telegram, поэтому по умолчанию потоков вдвое больше ядер
+        TELEGRAM_UPDATE_THREADS = Integer.parseInt(telegram_update_threads) > 0
+                ? Integer.parseInt(telegram_update_threads)
+                : Runtime.getRuntime().availableProcessors() * 2;
+        TELEGRAM_UPDATE_QUEUE_CAPACITY = Integer.parseInt(telegram_update_queue_capacity);
 
         GOOGLE_APPLICATION_NAME = google_app_name;
         GOOGLE_SERVICE_ACCOUNT_KEY_PATH = google_service_account_key;
-        GOOGLE_API_PAUSE_LONG = Long.parseLong(google_api_pause_ms);
+        GOOGLE_API_SHEETS_READ_REQUESTS_PER_MINUTE = Long.parseLong(google_api_sheets_read_requests_per_minute);
+        GOOGLE_API_SHEETS_WRITE_REQUESTS_PER_MINUTE = Long.parseLong(google_api_sheets_write_requests_per_minute);
+        GOOGLE_API_DRIVE_REQUESTS_PER_MINUTE = Long.parseLong(google_api_drive_requests_per_minute);
         GOOGLE_SHEET_ID = google_sheet_id;
         SHEET_VOLUNTEERS = sheet_volunteers;
         SHEET_VOLUNTEERS_ROLES_ORGANIZER_NAME = sheet_volunteers_role_organizer_name;
@@ -108,6 +197,8 @@ public class BotConfiguration {
         SHEET_VOLUNTEERS_EVENT_COLUMN_START = Integer.parseInt(sheet_volunteers_event_column_start);
         SHEET_VOLUNTEERS_EVENT_ROW = Integer.parseInt(sheet_volunteers_event_row);
         SHEET_SATURDAYS_AHEAD = Integer.parseInt(sheet_saturdays_ahead);
+        // сколько прошедших недель загружается в кэш; отрицательное значение - вся история
+        SHEET_SATURDAYS_BEHIND = Integer.parseInt(sheet_saturdays_behind);
         SHEET_USERID_CRYPT_PASS = sheet_userid_crypt_pass;
         SHEET_USERID_CRYPT_SALT = sheet_userid_crypt_salt;
     }
@@ -116,6 +207,22 @@ public class BotConfiguration {
         return BOT_STORAGE_SHEET_SYNC_INTERVAL_ms;
     }
 
+    public static long getBotStorageCacheFreshnessMilliSec() {
+        return BOT_STORAGE_CACHE_FRESHNESS_ms;
+    }
+
+    public static boolean isGoogleDriveChangesFeed() {
+        return GOOGLE_DRIVE_CHANGES_FEED;
+    }
+
+    public static int getTelegramUpdateThreads() {
+        return TELEGRAM_UPDATE_THREADS;
+    }
+
+    public static int getTelegramUpdateQueueCapacity() {
+        return TELEGRAM_UPDATE_QUEUE_CAPACITY;
+    }
+
     public static String getGoogleApplicationName() {
         return GOOGLE_APPLICATION_NAME;
     }
@@ -124,8 +231,16 @@ public class BotConfiguration {
         return GOOGLE_SERVICE_ACCOUNT_KEY_PATH;
     }
 
-    public static long getGoogleApiPauseLong() {
-        return GOOGLE_API_PAUSE_LONG;
+    public static long getGoogleApiSheetsReadRequestsPerMinute() {
+        return GOOGLE_API_SHEETS_READ_REQUESTS_PER_MINUTE;
+    }
+
+    public static long getGoogleApiSheetsWriteRequestsPerMinute() {
+        return GOOGLE_API_SHEETS_WRITE_REQUESTS_PER_MINUTE;
+    }
+
+    public static long getGoogleApiDriveRequestsPerMinute() {
+        return GOOGLE_API_DRIVE_REQUESTS_PER_MINUTE;
     }
 
     public static String getGoogleSheetId() {
@@ -180,6 +295,10 @@ public class BotConfiguration {
         return SHEET_SATURDAYS_AHEAD;
     }
 
+    public static int getSheetSaturdaysBehind() {
+        return SHEET_SATURDAYS_BEHIND;
+    }
+
     public static String getSheetUseridCryptPass() {
         return SHEET_USERID_CRYPT_PASS;
     }
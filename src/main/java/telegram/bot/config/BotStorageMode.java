@@ -5,5 +5,7 @@ import lombok.Getter;
 @Getter
 public enum BotStorageMode {
     LOCAL,
-    GOOGLE
+    GOOGLE,
+    // журнал изменений на диске, таблица - только выгружаемый отчет
+    JOURNAL
 }
@@ -0,0 +1,30 @@
+package telegram.bot.config;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+import telegram.bot.adapter.TelegramBotStorage;
+
+/**
+ * Состояние хранилища для /actuator/health: пока кэш загружается - OUT_OF_SERVICE,
+ * после загрузки - UP с деталями кэша, если загрузка не удалась - DOWN
+ */
+@Component("storage")
+public class StorageHealthIndicator implements HealthIndicator {
+    private final TelegramBotStorage storage;
+
+    public StorageHealthIndicator(TelegramBotStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public Health health() {
+        var readiness = storage.getReadiness();
+        if (!readiness.isDone()) return Health.outOfService().withDetail("state", "loading").build();
+        if (readiness.isCompletedExceptionally()) {
+            var error = readiness.handle((result, e) -> e).join();
+            return Health.down().withDetail("state", "failed").withDetail("error", String.valueOf(error)).build();
+        }
+        return Health.up().withDetail("state", "ready").withDetails(storage.getCacheDetails()).build();
+    }
+}
@@ -2,29 +2,150 @@ package telegram.bot.model;
 
 import lombok.AccessLevel;
 import lombok.Builder;
-import lombok.Data;
+import lombok.Getter;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
-import java.util.List;
-import java.util.Locale;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
-@Data
-@Builder
-@FieldDefaults(level = AccessLevel.PRIVATE)
+/**
+ * Событие в компактном виде: роли и волонтеры общие для событий одной загрузки (Roster),
+ * само событие - массив номеров волонтеров по индексу роли. Списки Participation строятся
+ * только при обращении через API и дальше не меняются.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class Event {
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    private static final DateTimeFormatter DATE_LOCALIZED_FORMATTER = DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG).localizedBy(new Locale("ru"));
+
     // Дата забега
     LocalDate eventDate;
 
-    // Команда
-    List<Participation> participants;
-
     // номер колонки в sheet
     int columnNumber;
 
+    // роли и волонтеры, на которые ссылаются номера
+    Roster roster;
+
+    // номера волонтеров (Roster) по индексу роли; Roster.NO_VOLUNTEER - позиция свободна
+    @Getter(AccessLevel.NONE)
+    int[] volunteerIds;
+
+    // поколение кэша события; меняется при любом изменении позиций
+    long generation;
+
+    // списки участников, построенные при первом обращении
+    @NonFinal
+    @Getter(AccessLevel.NONE)
+    volatile Views views;
+
+    private record Views(List<Participation> participants, List<Participation> vacantSlots, List<Participation> occupiedSlots, Vacancies vacancies) {
+    }
+
+    @Builder
+    public Event(LocalDate eventDate, int columnNumber, Roster roster, int[] volunteerIds) {
+        this.eventDate = eventDate;
+        this.columnNumber = columnNumber;
+        this.roster = roster;
+        this.volunteerIds = Objects.nonNull(volunteerIds) ? volunteerIds : new int[roster.getRolesCount()];
+        this.generation = GENERATIONS.incrementAndGet();
+    }
+
     public static String getDateLocalized(LocalDate date) {
-        return date.format(DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG).localizedBy(new Locale("ru")));
+        return date.format(DATE_LOCALIZED_FORMATTER);
+    }
+
+    // Команда
+    public List<Participation> getParticipants() {
+        return getViews().participants();
+    }
+
+    public List<Participation> getVacantSlots() {
+        return getViews().vacantSlots();
+    }
+
+    public List<Participation> getOccupiedSlots() {
+        return getViews().occupiedSlots();
+    }
+
+    public Vacancies getVacancies() {
+        return getViews().vacancies();
+    }
+
+    public List<Participation> getMainVacantSlots() {
+        return getVacancies().getMain();
+    }
+
+    public List<Participation> getOtherVacantSlots() {
+        return getVacancies().getOther();
+    }
+
+    // участие по номеру строки в таблице на закладке "Волонтеры"; null, если в строке нет роли
+    public Participation getSlot(int sheetRowNumber) {
+        var roleIndex = roster.getRoleIndex(sheetRowNumber);
+        return roleIndex >= 0 ? getParticipants().get(roleIndex) : null;
+    }
+
+    // волонтер на роли по индексу роли - без построения списков участников
+    public Volunteer getVolunteerAt(int roleIndex) {
+        return roleIndex < volunteerIds.length ? roster.getVolunteer(volunteerIds[roleIndex]) : null;
+    }
+
+    // копия события, в которой на позицию записан волонтер (null - позиция освобождена); само событие не меняется
+    public Event withVolunteer(int sheetRowNumber, Volunteer volunteer) {
+        var roleIndex = roster.getRoleIndex(sheetRowNumber);
+        if (roleIndex < 0) return null;
+        var newRoster = roster.withVolunteer(volunteer);
+        var newVolunteerIds = volunteerIds.clone();
+        newVolunteerIds[roleIndex] = newRoster.getVolunteerId(volunteer);
+        return Event.builder()
+                .eventDate(eventDate)
+                .columnNumber(columnNumber)
+                .roster(newRoster)
+                .volunteerIds(newVolunteerIds).build();
+    }
+
+    // гонка при первом обращении безопасна: оба потока построят одинаковые списки
+    private Views getViews() {
+        var currentViews = views;
+        if (Objects.isNull(currentViews)) views = currentViews = buildViews();
+        return currentViews;
+    }
+
+    private Views buildViews() {
+        List<Participation> participants = new ArrayList<>(volunteerIds.length);
+        List<Participation> vacant = new ArrayList<>();
+        List<Participation> occupied = new ArrayList<>();
+        List<Participation> mainVacant = new ArrayList<>();
+        List<Participation> otherVacant = new ArrayList<>();
+        for (int roleIndex = 0; roleIndex < volunteerIds.length; roleIndex++) {
+            var participation = Participation.builder()
+                    .volunteer(roster.getVolunteer(volunteerIds[roleIndex]))
+                    .eventDate(eventDate)
+                    .eventRole(roster.getRole(roleIndex))
+                    .sheetRowNumber(roster.getSheetRowNumber(roleIndex)).build();
+            participants.add(participation);
+            if (volunteerIds[roleIndex] != Roster.NO_VOLUNTEER) {
+                occupied.add(participation);
+                continue;
+            }
+            vacant.add(participation);
+            if (roster.isMainRole(roleIndex)) mainVacant.add(participation);
+            else otherVacant.add(participation);
+        }
+        return new Views(
+                Collections.unmodifiableList(participants),
+                Collections.unmodifiableList(vacant),
+                Collections.unmodifiableList(occupied),
+                Vacancies.builder()
+                        .eventDate(eventDate)
+                        .main(Collections.unmodifiableList(mainVacant))
+                        .other(Collections.unmodifiableList(otherVacant))
+                        .generation(generation).build());
     }
 }
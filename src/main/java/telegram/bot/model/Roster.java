@@ -0,0 +1,94 @@
+package telegram.bot.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.*;
+
+/**
+ * Общая для событий одной загрузки часть состава: роли по строкам листа "Волонтеры" (каждая роль хранится
+ * один раз, а не в каждом участии) и таблица волонтеров с плотными номерами. Событие хранит только номера
+ * волонтеров по индексу роли. Состав не меняется после создания: новый волонтер дает новый состав.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Roster {
+    // номер "волонтера" свободной позиции - новый массив номеров сразу описывает событие без участников
+    public static final int NO_VOLUNTEER = 0;
+
+    // номер строки первой роли
+    @Getter
+    int firstRowNumber;
+    String[] roles;
+    boolean[] mainRoles;
+    // волонтер по номеру; под номером NO_VOLUNTEER - null
+    Volunteer[] volunteers;
+    // номер по волонтеру - тот же объект, что в контактах (Volunteer сравнивается по значению, поэтому IdentityHashMap)
+    Map<Volunteer, Integer> volunteerIds;
+
+    private Roster(int firstRowNumber, String[] roles, boolean[] mainRoles, Volunteer[] volunteers, Map<Volunteer, Integer> volunteerIds) {
+        this.firstRowNumber = firstRowNumber;
+        this.roles = roles;
+        this.mainRoles = mainRoles;
+        this.volunteers = volunteers;
+        this.volunteerIds = volunteerIds;
+    }
+
+    public static Roster of(int firstRowNumber, List<String> roles, Set<String> mainRoles, Collection<Volunteer> volunteers) {
+        var roleNames = roles.stream().map(String::intern).toArray(String[]::new);
+        var mainRoleFlags = new boolean[roleNames.length];
+        for (int roleIndex = 0; roleIndex < roleNames.length; roleIndex++) mainRoleFlags[roleIndex] = mainRoles.contains(roleNames[roleIndex]);
+        var volunteerTable = new Volunteer[volunteers.size() + 1];
+        Map<Volunteer, Integer> volunteerIds = new IdentityHashMap<>(volunteers.size());
+        var volunteerId = NO_VOLUNTEER;
+        for (Volunteer volunteer : volunteers) {
+            volunteerTable[++volunteerId] = volunteer;
+            volunteerIds.put(volunteer, volunteerId);
+        }
+        return new Roster(firstRowNumber, roleNames, mainRoleFlags, volunteerTable, volunteerIds);
+    }
+
+    // состав, в котором есть волонтер; если он уже есть - этот же состав
+    public Roster withVolunteer(Volunteer volunteer) {
+        if (Objects.isNull(volunteer) || volunteerIds.containsKey(volunteer)) return this;
+        var newVolunteers = Arrays.copyOf(volunteers, volunteers.length + 1);
+        newVolunteers[volunteers.length] = volunteer;
+        Map<Volunteer, Integer> newVolunteerIds = new IdentityHashMap<>(volunteerIds);
+        newVolunteerIds.put(volunteer, volunteers.length);
+        return new Roster(firstRowNumber, roles, mainRoles, newVolunteers, newVolunteerIds);
+    }
+
+    public int getRolesCount() {
+        return roles.length;
+    }
+
+    public String getRole(int roleIndex) {
+        return roles[roleIndex];
+    }
+
+    public boolean isMainRole(int roleIndex) {
+        return mainRoles[roleIndex];
+    }
+
+    public int getSheetRowNumber(int roleIndex) {
+        return firstRowNumber + roleIndex;
+    }
+
+    // индекс роли по номеру строки; -1, если в строке нет роли
+    public int getRoleIndex(int sheetRowNumber) {
+        var roleIndex = sheetRowNumber - firstRowNumber;
+        return roleIndex >= 0 && roleIndex < roles.length ? roleIndex : -1;
+    }
+
+    public Volunteer getVolunteer(int volunteerId) {
+        return volunteers[volunteerId];
+    }
+
+    // номер волонтера; null - NO_VOLUNTEER. Волонтер должен быть в составе (withVolunteer)
+    public int getVolunteerId(Volunteer volunteer) {
+        if (Objects.isNull(volunteer)) return NO_VOLUNTEER;
+        var volunteerId = volunteerIds.get(volunteer);
+        if (Objects.isNull(volunteerId)) throw new IllegalArgumentException("Volunteer is not in roster: " + volunteer.getFullName());
+        return volunteerId;
+    }
+}
@@ -0,0 +1,30 @@
+package telegram.bot.model;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Getter
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Vacancies {
+    // Дата забега
+    LocalDate eventDate;
+
+    // свободные позиции на основные роли
+    List<Participation> main;
+
+    // свободные позиции на прочие роли
+    List<Participation> other;
+
+    // поколение кэша события, в котором посчитаны списки; меняется при любом изменении позиций
+    long generation;
+
+    public boolean isEmpty() {
+        return main.isEmpty() && other.isEmpty();
+    }
+}
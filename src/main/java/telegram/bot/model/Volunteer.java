@@ -13,7 +13,7 @@ import java.util.Objects;
 import java.util.Optional;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class Volunteer {
@@ -52,7 +52,7 @@ public class Volunteer {
                 getValueFromList(userProperties, 1),
                 getValueFromList(userProperties, 2),
                 getValueFromList(userProperties, 3),
-                Long.parseLong(aesUtil.decrypt(Optional.ofNullable(getValueFromList(userProperties, 4)).orElse(aesUtil.encrypt("0")))),
+                Long.parseLong(Optional.ofNullable(getValueFromList(userProperties, 4)).map(aesUtil::decrypt).orElse("0")),
                 Boolean.parseBoolean(getValueFromList(userProperties, 5)),
                 Boolean.parseBoolean(getValueFromList(userProperties, 6)),
                 null);
@@ -1,9 +1,7 @@
 package telegram.bot.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -19,14 +17,16 @@ import telegram.bot.config.BotConfiguration;
 import telegram.bot.model.*;
 import telegram.bot.service.enums.ButtonType;
 import telegram.bot.service.enums.UserActionType;
-import telegram.bot.service.enums.UserChoiceType;
 import telegram.bot.service.factories.ReplyFactory;
+import telegram.bot.service.utils.CallbackPayloadCodec;
+import telegram.bot.service.utils.DatesCalculator;
+import telegram.bot.service.utils.KeyedSerialExecutor;
+import telegram.bot.service.utils.ReadinessGate;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Slf4j
 @Component
@@ -53,15 +53,24 @@ public class TelegramBot extends TelegramLongPollingBot {
     /**
      * Список активных регистраций
      */
-    private final Map<Long, UserRecord> userRecords = new HashMap<>();
+    private final Map<Long, UserRecord> userRecords = new ConcurrentHashMap<>();
+
+    /**
+     * Обработчик обновлений: разные пользователи обслуживаются параллельно, обновления одного пользователя - по порядку
+     */
+    private final KeyedSerialExecutor<Long> updateExecutor = new KeyedSerialExecutor<>(
+            "telegram-update", BotConfiguration.getTelegramUpdateThreads(), BotConfiguration.getTelegramUpdateQueueCapacity());
+
+    /**
+     * Обновления, пришедшие до загрузки хранилища; после загрузки отдаются обработчику в порядке поступления
+     */
+    private ReadinessGate<Update> updateGate;
 
     /**
      * Класс формирующий ответы
      */
     private final ReplyFactory reply = new ReplyFactory();
 
-    ObjectMapper mapper = new ObjectMapper();
-
     @Autowired
     public TelegramBot(TelegramBotStorage storage) throws TelegramApiException {
         log.info("Bot bean created");
@@ -70,10 +79,18 @@ public class TelegramBot extends TelegramLongPollingBot {
 
     @PostConstruct
     private void init() throws TelegramApiException {
+        // регистрируемся сразу, не дожидаясь загрузки хранилища; ранние обновления ждут в очереди
+        // и отпускаются по окончании загрузки - и удачной, и нет
+        updateGate = new ReadinessGate<>(storage.getReadiness(), BotConfiguration.getTelegramUpdateQueueCapacity(),
+                this::dispatchUpdate, this::answerStorageUnavailable);
         log.info("Registering bot...");
         telegramBotsApi.registerBot(this); // Регистрируем бота
         log.info("Registration successful!!");
-        mapper.registerModule(new JavaTimeModule());
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        updateExecutor.shutdown();
     }
 
     @Override
@@ -89,18 +106,46 @@ public class TelegramBot extends TelegramLongPollingBot {
     @Override
     public void onUpdateReceived(Update update) {
         log.info("onUpdateReceived");
-        Map.Entry<Long, String> userIdentity = getUserIdentity(update);
+        // остальные типы обновлений бот не обрабатывает
+        if (!update.hasMessage() && !update.hasCallbackQuery()) return;
 
-        // если этого юзера еще нет в мапе юзеров бота, добавляем его туда и отправляем приветствие
-        if (!userRecords.containsKey(userIdentity.getKey()))
-            userRecords.put(userIdentity.getKey(), UserRecord.builder().expectedUserActionType(UserActionType.CHOOSE_COMMAND).build());
+        updateGate.accept(update);
+    }
 
-        var userRecord = userRecords.get(userIdentity.getKey());
+    private void answerStorageUnavailable(Update update) {
+        try {
+            answerToUser(getChatId(update), "Бот временно недоступен, попробуйте позже");
+        } catch (RuntimeException e) {
+            log.error("Can't answer update while storage is unavailable", e);
+        }
+    }
+
+    private void dispatchUpdate(Update update) {
+        Map.Entry<Long, String> userIdentity = getUserIdentity(update);
+        // поток получения обновлений только раздает их: медленный запрос к таблице одного пользователя не задерживает остальных
+        updateExecutor.execute(userIdentity.getKey(), () -> handleUpdate(update, userIdentity));
+    }
+
+    private void handleUpdate(Update update, Map.Entry<Long, String> userIdentity) {
+        // если этого юзера еще нет в мапе юзеров бота, добавляем его туда
+        var userRecord = userRecords.computeIfAbsent(userIdentity.getKey(),
+                userId -> UserRecord.builder().expectedUserActionType(UserActionType.CHOOSE_COMMAND).build());
 
         if (update.hasMessage()) // если пользователь выбрал команду в основном меню или что-то ввел с клавиатуры
             handleCommand(update, userIdentity, userRecord);
-        else if (update.hasCallbackQuery()) // если пользователь кликнул кнопку в каком-то из сценариев
-            handleCallback(update, userIdentity, userRecord);
+        else if (update.hasCallbackQuery()) { // если пользователь кликнул кнопку в каком-то из сценариев
+            // данные кнопки разбираем один раз и дальше передаем по цепочке
+            CallbackPayload payload;
+            try {
+                payload = CallbackPayloadCodec.decode(update.getCallbackQuery().getData());
+            } catch (IllegalArgumentException e) {
+                // кнопка из сообщения старой версии бота: отвечаем на нажатие, иначе кнопка так и будет крутиться
+                log.info("Expired callback data: {}", update.getCallbackQuery().getData());
+                answerMenuExpired(update);
+                return;
+            }
+            handleCallback(update, payload, userIdentity, userRecord);
+        }
     }
 
     private void handleCommand(Update update, Map.Entry<Long, String> userIdentity, UserRecord userRecord) {
@@ -124,7 +169,7 @@ public class TelegramBot extends TelegramLongPollingBot {
                 }
             } else if (text.equals(ReplyFactory.COMMAND_SHOW_VOLUNTEERS)) {
                 userRecord.setExpectedUserActionType(UserActionType.CLICK_BUTTON);
-                answerToUser(reply.selectDatesReply(chatId, ButtonType.SHOW_PART));
+                answerToUser(reply.selectDatesReply(chatId, ButtonType.SHOW_PART, getNextEventDates()));
             } else if (text.equals(ReplyFactory.COMMAND_TAKE_PARTICIPATION)) {
                 if (Objects.isNull(storage.getVolunteerByTgUserName(userIdentity.getValue()))) {
                     //userRecord.setExpectedUserActionType(UserActionType.CHOOSE_COMMAND);
@@ -134,7 +179,7 @@ public class TelegramBot extends TelegramLongPollingBot {
                     answerToUser(reply.enterNameReply(chatId));
                 } else {
                     userRecord.setExpectedUserActionType(UserActionType.CLICK_BUTTON);
-                    answerToUser(reply.selectDatesReply(chatId, ButtonType.TAKE_PART1));
+                    answerToUser(reply.selectDatesReply(chatId, ButtonType.TAKE_PART1, getNextEventDates()));
                 }
             } else if (text.equals(ReplyFactory.COMMAND_SUBSCRIBE_NOTIFICATION)) {
                 userRecord.setExpectedUserActionType(UserActionType.CHOOSE_COMMAND);
@@ -156,21 +201,13 @@ public class TelegramBot extends TelegramLongPollingBot {
                 userRecord.setExpectedUserActionType(UserActionType.CHOOSE_COMMAND);
                 answerToUser(reply.genericMessage(chatId, "Выберите команду из меню"));
             }
-        } else handleStage(update, userIdentity, userRecord); // значит пользователь что-то написал
+        } else handleStage(update, null, userIdentity, userRecord); // значит пользователь что-то написал
     }
 
-    private void handleCallback(Update update, Map.Entry<Long, String> userIdentity, UserRecord userRecord) {
+    private void handleCallback(Update update, CallbackPayload payload, Map.Entry<Long, String> userIdentity, UserRecord userRecord) {
         log.info("handleCallback");
         long chatId = getChatId(update);
 
-        CallbackPayload payload;
-        try {
-            var pr = update.getCallbackQuery().getData();
-            payload = mapper.readValue(update.getCallbackQuery().getData(), CallbackPayload.class);
-        } catch (JsonProcessingException e) {
-            log.error("Error reading payload");
-            return;
-        }
         switch (payload.getButtonType()) {
             case SHOW_PART -> {
                 userRecord.setExpectedUserActionType(UserActionType.CLICK_BUTTON);
@@ -178,56 +215,25 @@ public class TelegramBot extends TelegramLongPollingBot {
                         reply.showVolunteersReply(
                                 chatId,
                                 payload.getDate(),
-                                storage.getParticipantsByDate(payload.getDate())
-                                        .stream()
-                                        .filter(part -> part.getVolunteer() != null)
-                                        .collect(Collectors.toList())));
+                                storage.getOccupiedParticipationByDate(payload.getDate())));
             }
             case TAKE_PART1 -> {
                 userRecord.setExpectedUserActionType(UserActionType.CLICK_BUTTON);
-                var vacantRolesMain = storage.getParticipantsByDate(payload.getDate())
-                        .stream()
-                        .filter(participation -> storage.getMainRoles().stream().anyMatch(mainRole -> participation.getEventRole().equals(mainRole)))
-                        .filter(part -> part.getVolunteer() == null)
-                        .toList();
-
-                var vacantRolesOther = storage.getParticipantsByDate(payload.getDate())
-                        .stream()
-                        .filter(participation -> storage.getMainRoles().stream().noneMatch(mainRole -> participation.getEventRole().equals(mainRole)))
-                        .filter(part -> part.getVolunteer() == null)
-                        .toList();
+                var vacancies = storage.getVacanciesByDate(payload.getDate());
 
-                if (vacantRolesMain.isEmpty() && vacantRolesOther.isEmpty())
+                if (vacancies.isEmpty())
                     answerToUser(reply.allSlotsTakenReply(chatId));
-                else if (!vacantRolesMain.isEmpty()) {
-                    List<Participation> vacantRolesMainPlusOptionalSeparator = Stream.concat(
-                            vacantRolesMain.stream(),
-                            Stream.of(!vacantRolesOther.isEmpty() ?
-                                    Participation.builder()
-                                            .eventDate(payload.getDate())
-                                            .eventRole(">>>")
-                                            .pointerToNextPageOfRoles(true).build() :
-                                    null)
-                    ).toList();
-                    answerToUser(reply.showVacantRoles(chatId, payload.getDate(), vacantRolesMainPlusOptionalSeparator));
-                } else
-                    answerToUser(reply.showVacantRoles(chatId, payload.getDate(), vacantRolesOther));
-
+                else
+                    answerToUser(reply.showVacantRoles(chatId, vacancies, false));
             }
             case TAKE_PART2 -> {
                 userRecord.setExpectedUserActionType(UserActionType.CLICK_BUTTON);
-                var vacantRolesOther = storage.getParticipantsByDate(payload.getDate())
-                        .stream()
-                        .filter(participation -> storage.getMainRoles().stream().noneMatch(mainRole -> participation.getEventRole().equals(mainRole)))
-                        .filter(part -> part.getVolunteer() == null)
-                        .toList();
-                answerToUser(reply.showVacantRoles(chatId, payload.getDate(), vacantRolesOther));
+                answerToUser(reply.showVacantRoles(chatId, storage.getVacanciesByDate(payload.getDate()), true));
             }
             case CHOSEN_ROLE -> {
                 // берем список участников на указанную субботу и ищем среди них нашего волонтера
-                var existingUSer = storage.getParticipantsByDate(payload.getDate())
+                var existingUSer = storage.getOccupiedParticipationByDate(payload.getDate())
                         .stream()
-                        .filter(participant -> !Objects.isNull(participant.getVolunteer()))
                         .filter(participant -> participant.getVolunteer().getTgUserName().equals(userIdentity.getValue()))
                         .findFirst().orElse(null);
 
@@ -262,12 +268,13 @@ public class TelegramBot extends TelegramLongPollingBot {
                 });
             }
             case REG_CHOICE, PART_CHOICE -> {
-                handleStage(update, userIdentity, userRecord);
+                handleStage(update, payload, userIdentity, userRecord);
             }
         }
     }
 
-    private void handleStage(Update update, Map.Entry<Long, String> userIdentity, UserRecord userRecord) {
+    // payload - разобранные данные кнопки; null, если пользователь что-то ввел с клавиатуры
+    private void handleStage(Update update, CallbackPayload payload, Map.Entry<Long, String> userIdentity, UserRecord userRecord) {
         log.info("handleStage");
         long chatId = getChatId(update);
 
@@ -297,15 +304,14 @@ public class TelegramBot extends TelegramLongPollingBot {
             }
             case CONFIRM_CHOICE -> {
                 userRecord.setExpectedUserActionType(UserActionType.CHOOSE_COMMAND);
-                CallbackPayload payload;
-                try {
-                    payload = mapper.readValue(update.getCallbackQuery().getData(), CallbackPayload.class);
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
+                // вместо нажатия кнопки пользователь что-то написал
+                if (Objects.isNull(payload) || Objects.isNull(payload.getUserChoice())) {
+                    answerToUser(reply.genericMessage(chatId, "Выберите команду из меню"));
+                    return;
                 }
-                switch (ButtonType.valueOf(payload.getButtonType().name())) {
+                switch (payload.getButtonType()) {
                     case REG_CHOICE -> {
-                        switch (UserChoiceType.valueOf(payload.getUserChoice())) {
+                        switch (payload.getUserChoice()) {
                             case YES -> {
                                 if (storage.getVolunteerByTgUserName(userIdentity.getValue()) != null)
                                     answerToUser(reply.alreadyRegisteredReply(chatId));
@@ -340,25 +346,28 @@ public class TelegramBot extends TelegramLongPollingBot {
                         }
                     }
                     case PART_CHOICE -> {
-                        switch (UserChoiceType.valueOf(payload.getUserChoice())) {
+                        switch (payload.getUserChoice()) {
                             case YES -> {
                                 if (isRoleOccupiedAlready(payload, storage.getVolunteerByTgUserName(userIdentity.getValue())))
                                     answerToUser(reply.genericMessage(chatId, "Запись на " + Event.getDateLocalized(payload.getDate()) + " на роль \"" + getRoleName(payload) + "\" уже подтверждена"));
                                 else {
                                     // из данных коллбэка определяем имя роли
-                                    String eventRole = storage.getParticipantsByDate(payload.getDate())
-                                            .stream()
-                                            .filter(participation -> participation.getSheetRowNumber() == payload.getSheetRowNumber())
-                                            .map(Participation::getEventRole).findFirst().orElseThrow(() -> new RuntimeException("No role!"));
+                                    String eventRole = getRoleName(payload);
 
-                                    // записываем информацию в таблицу
-                                    storage.saveParticipation(Participation.builder()
+                                    // занимаем позицию и записываем информацию в таблицу
+                                    var reserved = storage.reserveParticipation(Participation.builder()
                                             .volunteer(storage.getVolunteerByTgUserName(userIdentity.getValue()))
                                             .eventDate(payload.getDate()).eventRole(eventRole).sheetRowNumber(payload.getSheetRowNumber()).build());
 
                                     // запоминаем, что после записи на роль нужно снова выбирать команду
                                     userRecord.setExpectedUserActionType(UserActionType.CHOOSE_COMMAND);
 
+                                    // позицию успел занять другой волонтер (или запись в таблицу не удалась)
+                                    if (Objects.isNull(reserved)) {
+                                        answerToUser(reply.roleIsTakenByOtherReply(chatId, payload.getDate(), eventRole));
+                                        return;
+                                    }
+
                                     // информируем волонтера
                                     answerToUser(reply.genericMessage(chatId, "Запись на " + Event.getDateLocalized(payload.getDate()) + " на роль \"" + getRoleName(payload) + "\" подтверждена"));
 
@@ -388,15 +397,22 @@ public class TelegramBot extends TelegramLongPollingBot {
     }
 
     private String getRoleName(CallbackPayload payload) {
-        return storage.getParticipantsByDate(payload.getDate())
+        return Optional.ofNullable(storage.getParticipation(payload.getDate(), payload.getSheetRowNumber()))
+                .map(Participation::getEventRole).orElseThrow(() -> new RuntimeException("No role!"));
+    }
+
+    // даты для клавиатуры выбора - из календаря событий, начиная с ближайшей субботы
+    private List<LocalDate> getNextEventDates() {
+        var upcomingEventDates = storage.getUpcomingEvents(DatesCalculator.getNearestEventDate(), DatesCalculator.NEXT_EVENT_DATES_COUNT)
                 .stream()
-                .filter(participation -> participation.getSheetRowNumber() == payload.getSheetRowNumber())
-                .map(Participation::getEventRole).findFirst().orElseThrow(() -> new RuntimeException("No role!"));
+                .map(Event::getEventDate)
+                .toList();
+        return DatesCalculator.getNextEventDates(upcomingEventDates);
     }
 
     private boolean isRoleOccupiedAlready(CallbackPayload payload, Volunteer volunteer) {
-        return storage.getParticipantsByDate(payload.getDate()).stream()
-                .anyMatch(participcant -> participcant.getSheetRowNumber() == payload.getSheetRowNumber() && participcant.getVolunteer() == volunteer);
+        var participation = storage.getParticipation(payload.getDate(), payload.getSheetRowNumber());
+        return Objects.nonNull(participation) && participation.getVolunteer() == volunteer;
     }
 
     private boolean isNameAndSurnameAreCorrect(String name, String surname) {
@@ -410,10 +426,7 @@ public class TelegramBot extends TelegramLongPollingBot {
     }
 
     private void replyToSubscriptionRequester(Map.Entry<Long, String> userKeys, long chatId) {
-        storage.getVolunteers()
-                .stream()
-                .filter(user -> user.getTgUserName().equals(userKeys.getValue()))
-                .findAny()
+        Optional.ofNullable(storage.getVolunteerByTgUserName(userKeys.getValue()))
                 .ifPresentOrElse(user -> {
                             if (user.getIsOrganizer() && !user.getIsSubscribed()) {
                                 answerToUser(reply.addOrganizerSignupReply(chatId));
@@ -442,6 +455,14 @@ public class TelegramBot extends TelegramLongPollingBot {
         }
     }
 
+    private void answerMenuExpired(Update update) {
+        try {
+            execute(reply.menuExpiredAnswer(update.getCallbackQuery().getId()));
+        } catch (TelegramApiException e) {
+            log.error("Can't answer expired callback query", e);
+        }
+    }
+
     private void answerToUser(long chatId, String message) {
         try {
             execute(reply.genericMessage(chatId, message));
@@ -1,8 +1,5 @@
 package telegram.bot.service.factories;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
@@ -10,32 +7,78 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.Keyboard
 import telegram.bot.model.CallbackPayload;
 import telegram.bot.model.Event;
 import telegram.bot.model.Participation;
+import telegram.bot.model.Vacancies;
 import telegram.bot.service.enums.ButtonType;
 import telegram.bot.service.enums.UserChoiceType;
-import telegram.bot.service.utils.DatesCalculator;
+import telegram.bot.service.utils.CallbackPayloadCodec;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 public class KeyboardFactory {
-    ObjectMapper mapper;
+    private static final String DATE_EMOJI = new String(new byte[]{(byte) 0xF0, (byte) 0x9F, (byte) 0x93, (byte) 0x85}, StandardCharsets.UTF_8);
+    private static final String ROLE_EMOJI = new String(new byte[]{(byte) 0xF0, (byte) 0x9F, (byte) 0x9A, (byte) 0xA9}, StandardCharsets.UTF_8);
+    private static final String YES_EMOJI = new String(new byte[]{(byte) 0xE2, (byte) 0x9C, (byte) 0x85}, StandardCharsets.UTF_8);
+    private static final String NO_EMOJI = new String(new byte[]{(byte) 0xE2, (byte) 0x9D, (byte) 0x8C}, StandardCharsets.UTF_8);
+    private static final String NEXT_PAGE_OF_ROLES = ">>>";
+    // больше дат одновременно не бывает (ближайшие субботы); при переполнении кэш очищается
+    private static final int VACANT_ROLES_CACHE_MAX_SIZE = 64;
+
+    // готовые клавиатуры и то, для чего они построены; клавиатуры после построения не меняются
+    private record DatesMarkup(List<LocalDate> dates, InlineKeyboardMarkup markup) {
+    }
 
-    public KeyboardFactory() {
-        mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
+    private record VacantRolesMarkup(long generation, InlineKeyboardMarkup mainPage, InlineKeyboardMarkup otherPage) {
     }
 
-    public InlineKeyboardMarkup getFourDatesMarkup(ButtonType buttonType) {
-        List<LocalDate> dates = DatesCalculator.getNextEventDates();
-        return InlineKeyboardMarkup.builder().keyboard(List.of(
-                List.of(getDateButton(dates.get(0), buttonType), getDateButton(dates.get(1), buttonType)),
-                List.of(getDateButton(dates.get(2), buttonType), getDateButton(dates.get(3), buttonType))
-        )).build();
+    // клавиатура дат по типу кнопки - для дат, по которым она построена
+    private final Map<ButtonType, DatesMarkup> datesMarkups = new ConcurrentHashMap<>();
+
+    // клавиатуры свободных позиций по дате - для поколения кэша события, в котором посчитаны вакансии
+    private final Map<LocalDate, VacantRolesMarkup> vacantRolesMarkups = new ConcurrentHashMap<>();
+
+    // dates - четыре ближайшие даты (DatesCalculator.getNextEventDates)
+    public InlineKeyboardMarkup getFourDatesMarkup(ButtonType buttonType, List<LocalDate> dates) {
+        var datesMarkup = datesMarkups.get(buttonType);
+        if (datesMarkup == null || !datesMarkup.dates().equals(dates)) {
+            datesMarkup = new DatesMarkup(List.copyOf(dates), InlineKeyboardMarkup.builder().keyboard(List.of(
+                    List.of(getDateButton(dates.get(0), buttonType), getDateButton(dates.get(1), buttonType)),
+                    List.of(getDateButton(dates.get(2), buttonType), getDateButton(dates.get(3), buttonType))
+            )).build());
+            datesMarkups.put(buttonType, datesMarkup);
+        }
+        return datesMarkup.markup();
     }
 
-    public InlineKeyboardMarkup getVacantRolesMarkup(LocalDate date, List<Participation> participations) {
+    // клавиатура свободных позиций: на первой странице основные роли (и переход к прочим), на второй - прочие;
+    // если основных свободных нет, первая страница сразу состоит из прочих
+    public InlineKeyboardMarkup getVacantRolesMarkup(Vacancies vacancies, boolean isOtherRolesPage) {
+        var vacantRolesMarkup = vacantRolesMarkups.get(vacancies.getEventDate());
+        if (vacantRolesMarkup == null || vacantRolesMarkup.generation() != vacancies.getGeneration()) {
+            var date = vacancies.getEventDate();
+            var mainPage = vacancies.getMain().isEmpty() ? vacancies.getOther() : Stream.concat(
+                    vacancies.getMain().stream(),
+                    !vacancies.getOther().isEmpty() ?
+                            Stream.of(Participation.builder()
+                                    .eventDate(date)
+                                    .eventRole(NEXT_PAGE_OF_ROLES)
+                                    .pointerToNextPageOfRoles(true).build()) :
+                            Stream.<Participation>empty()
+            ).toList();
+            vacantRolesMarkup = new VacantRolesMarkup(vacancies.getGeneration(),
+                    getVacantRolesMarkup(date, mainPage), getVacantRolesMarkup(date, vacancies.getOther()));
+            if (vacantRolesMarkups.size() >= VACANT_ROLES_CACHE_MAX_SIZE) vacantRolesMarkups.clear();
+            vacantRolesMarkups.put(date, vacantRolesMarkup);
+        }
+        return isOtherRolesPage ? vacantRolesMarkup.otherPage() : vacantRolesMarkup.mainPage();
+    }
+
+    private InlineKeyboardMarkup getVacantRolesMarkup(LocalDate date, List<Participation> participations) {
         InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
         inlineKeyboardMarkup.setKeyboard(
                 participations.stream()
@@ -45,21 +88,17 @@ public class KeyboardFactory {
     }
 
     public InlineKeyboardMarkup getConfirmationButtons(CallbackPayload callbackPayload) {
-        try {
-            return InlineKeyboardMarkup.builder()
-                    .keyboard(List.of(
-                            List.of(InlineKeyboardButton.builder()
-                                            .text(new String(new byte[]{(byte) 0xE2, (byte) 0x9C, (byte) 0x85}, StandardCharsets.UTF_8) + " " + UserChoiceType.YES.name())
-                                            .callbackData(mapper.writeValueAsString(getCallbackPayload(callbackPayload, UserChoiceType.YES)))
-                                            .build(),
-                                    InlineKeyboardButton.builder()
-                                            .text(new String(new byte[]{(byte) 0xE2, (byte) 0x9D, (byte) 0x8C}, StandardCharsets.UTF_8) + " " + UserChoiceType.NO.name())
-                                            .callbackData(mapper.writeValueAsString(getCallbackPayload(callbackPayload, UserChoiceType.NO)))
-                                            .build()))
-                    ).build();
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        return InlineKeyboardMarkup.builder()
+                .keyboard(List.of(
+                        List.of(InlineKeyboardButton.builder()
+                                        .text(YES_EMOJI + " " + UserChoiceType.YES.name())
+                                        .callbackData(CallbackPayloadCodec.encode(getCallbackPayload(callbackPayload, UserChoiceType.YES)))
+                                        .build(),
+                                InlineKeyboardButton.builder()
+                                        .text(NO_EMOJI + " " + UserChoiceType.NO.name())
+                                        .callbackData(CallbackPayloadCodec.encode(getCallbackPayload(callbackPayload, UserChoiceType.NO)))
+                                        .build()))
+                ).build();
     }
 
     private CallbackPayload getCallbackPayload(CallbackPayload callbackPayload, UserChoiceType userChoiceType) {
@@ -67,7 +106,7 @@ public class KeyboardFactory {
                 .buttonType(callbackPayload.getButtonType())
                 .date(callbackPayload.getDate())
                 .sheetRowNumber(callbackPayload.getSheetRowNumber())
-                .userChoice(userChoiceType.name()).build();
+                .userChoice(userChoiceType).build();
     }
 
     public InlineKeyboardMarkup getApproveDeclineButtonsMarkup() {
@@ -123,25 +162,16 @@ public class KeyboardFactory {
                                 ButtonType.CHOSEN_ROLE :
                                 ButtonType.TAKE_PART2)
                 .build();
-        try {
-            return InlineKeyboardButton.builder()
-                    .text((!participation.isPointerToNextPageOfRoles() ?
-                            new String(new byte[]{(byte) 0xF0, (byte) 0x9F, (byte) 0x9A, (byte) 0xA9}, StandardCharsets.UTF_8) : "")
-                            + " " + participation.getEventRole()).callbackData(mapper.writeValueAsString(payload)).build();
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        return InlineKeyboardButton.builder()
+                .text((!participation.isPointerToNextPageOfRoles() ? ROLE_EMOJI : "")
+                        + " " + participation.getEventRole()).callbackData(CallbackPayloadCodec.encode(payload)).build();
     }
 
     private InlineKeyboardButton getDateButton(LocalDate date, ButtonType buttonType) {
         CallbackPayload payload = CallbackPayload.builder().date(date).buttonType(buttonType).build();
-        try {
-            var caption = new String(new byte[]{(byte) 0xF0, (byte) 0x9F, (byte) 0x93, (byte) 0x85}, StandardCharsets.UTF_8) + " " + Event.getDateLocalized(date);
-            return InlineKeyboardButton.builder()
-                    .text(caption)
-                    .callbackData(mapper.writeValueAsString(payload)).build();
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        var caption = DATE_EMOJI + " " + Event.getDateLocalized(date);
+        return InlineKeyboardButton.builder()
+                .text(caption)
+                .callbackData(CallbackPayloadCodec.encode(payload)).build();
     }
 }
@@ -1,9 +1,11 @@
 package telegram.bot.service.factories;
 
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import telegram.bot.model.CallbackPayload;
 import telegram.bot.model.Event;
 import telegram.bot.model.Participation;
+import telegram.bot.model.Vacancies;
 import telegram.bot.service.enums.ButtonType;
 
 import java.nio.charset.StandardCharsets;
@@ -39,6 +41,7 @@ public class ReplyFactory {
     private static final String ORG_ADD_SIGNUP_MESSAGE = "Вы подписаны на рассылку уведомлений о записи волонтеров";
     private static final String ORG_ALREADY_SIGNUP_MESSAGE = "Вы уже подписаны на рассылку уведомлений о записи волонтеров";
     private static final String ORG_REJECT_SIGNUP_MESSAGE = "Вас нет в списке организаторов";
+    private static final String MENU_EXPIRED_MESSAGE = "Меню устарело, откройте его заново";
     private final KeyboardFactory keyboardFactory = new KeyboardFactory();
 
     public SendMessage registerInitialReply(long chatId) {
@@ -61,11 +64,11 @@ public class ReplyFactory {
         return SendMessage.builder().chatId(chatId).text(ORG_REJECT_SIGNUP_MESSAGE).build();
     }
 
-    public SendMessage selectDatesReply(long chatId, ButtonType buttonType) {
+    public SendMessage selectDatesReply(long chatId, ButtonType buttonType, List<LocalDate> dates) {
         return SendMessage.builder()
                 .chatId(chatId)
                 .text(SELECT_DATES_MESSAGE)
-                .replyMarkup(keyboardFactory.getFourDatesMarkup(buttonType))
+                .replyMarkup(keyboardFactory.getFourDatesMarkup(buttonType, dates))
                 .build();
     }
 
@@ -115,9 +118,9 @@ public class ReplyFactory {
         return SendMessage.builder().chatId(chatId).text(ALL_SLOTS_TAKEN_MESSAGE).build();
     }
 
-    public SendMessage showVacantRoles(long chatId, LocalDate date, List<Participation> participats) {
+    public SendMessage showVacantRoles(long chatId, Vacancies vacancies, boolean isOtherRolesPage) {
         return SendMessage.builder().chatId(chatId).text(SELECT_ROLE_MESSAGE)
-                .replyMarkup(keyboardFactory.getVacantRolesMarkup(date, participats)).build();
+                .replyMarkup(keyboardFactory.getVacantRolesMarkup(vacancies, isOtherRolesPage)).build();
     }
 
     public SendMessage roleReservationDoneReply(long chatId, LocalDate eventDate, String eventRole) {
@@ -128,6 +131,10 @@ public class ReplyFactory {
         return SendMessage.builder().chatId(chatId).text(new String(new byte[]{(byte) 0xE2, (byte) 0x9D, (byte) 0x97}, StandardCharsets.UTF_8) + " " + Event.getDateLocalized(eventDate) + " вы уже записаны на роль " + eventRole).build();
     }
 
+    public SendMessage roleIsTakenByOtherReply(long chatId, LocalDate eventDate, String eventRole) {
+        return SendMessage.builder().chatId(chatId).text("Роль \"" + eventRole + "\" на " + Event.getDateLocalized(eventDate) + " уже занял другой волонтер, выберите другую роль").build();
+    }
+
     public SendMessage errorMessage(long chatId) {
         return SendMessage.builder().chatId(chatId).text(ERROR_MESSAGE).build();
     }
@@ -148,6 +155,14 @@ public class ReplyFactory {
         return SendMessage.builder().chatId(chatId).text(volunteer + INFORM_ORG_JOIN_VOLUNTEERS_MESSAGE + "\"" + eventRole + "\" на дату " + date + "!").build();
     }
 
+    // ответ на нажатие кнопки, которую бот уже не может разобрать (сообщение из старой версии бота)
+    public AnswerCallbackQuery menuExpiredAnswer(String callbackQueryId) {
+        return AnswerCallbackQuery.builder()
+                .callbackQueryId(callbackQueryId)
+                .text(MENU_EXPIRED_MESSAGE)
+                .build();
+    }
+
     public SendMessage genericMessage(long chatId, String message) {
         return SendMessage.builder().chatId(chatId).text(message).build();
     }
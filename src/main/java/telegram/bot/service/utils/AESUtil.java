@@ -12,36 +12,67 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AESUtil {
+    // ограничение кэшей; при переполнении кэш очищается целиком (значений порядка числа контактов)
+    private static final int CACHE_MAX_SIZE = 100_000;
+
     private final SecretKey secretKey;
     private final IvParameterSpec ivParameterSpec;
 
+    // Cipher не потокобезопасен: у каждого потока свой экземпляр, инициализированный один раз.
+    // После doFinal шифр возвращается в состояние после init и готов к следующему вызову
+    private final ThreadLocal<Cipher> encryptCipher = ThreadLocal.withInitial(() -> createCipher(Cipher.ENCRYPT_MODE));
+    private final ThreadLocal<Cipher> decryptCipher = ThreadLocal.withInitial(() -> createCipher(Cipher.DECRYPT_MODE));
+
+    // IV фиксирован, поэтому шифрование детерминировано и результат можно запоминать в обе стороны
+    private final Map<String, String> decryptedByCipherText = new ConcurrentHashMap<>();
+    private final Map<String, String> encryptedByPlainText = new ConcurrentHashMap<>();
+
     public AESUtil() {
         secretKey = getSecretKetFromPasswordAndSalt(BotConfiguration.getSheetUseridCryptPass(), BotConfiguration.getSheetUseridCryptSalt());
         ivParameterSpec = generateIvParameterSpec();
     }
 
     public String encrypt(String plainText) {
-        Cipher cipher = null;
+        var cipherText = encryptedByPlainText.get(plainText);
+        if (cipherText != null) return cipherText;
         try {
-            cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
-            return Base64.getEncoder().encodeToString(cipher.doFinal(plainText.getBytes()));
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException |
-                 InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+            cipherText = Base64.getEncoder().encodeToString(encryptCipher.get().doFinal(plainText.getBytes()));
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
             throw new RuntimeException(e);
         }
+        remember(encryptedByPlainText, plainText, cipherText);
+        remember(decryptedByCipherText, cipherText, plainText);
+        return cipherText;
     }
 
     public String decrypt(String cipherText) {
-        Cipher cipher = null;
+        var plainText = decryptedByCipherText.get(cipherText);
+        if (plainText != null) return plainText;
+        try {
+            plainText = new String(decryptCipher.get().doFinal(Base64.getDecoder().decode(cipherText)));
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            throw new RuntimeException(e);
+        }
+        remember(decryptedByCipherText, cipherText, plainText);
+        return plainText;
+    }
+
+    private void remember(Map<String, String> cache, String key, String value) {
+        if (cache.size() >= CACHE_MAX_SIZE) cache.clear();
+        cache.put(key, value);
+    }
+
+    private Cipher createCipher(int mode) {
         try {
-            cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
-            return new String(cipher.doFinal(Base64.getDecoder().decode(cipherText)));
+            var cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(mode, secretKey, ivParameterSpec);
+            return cipher;
         } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException |
-                 InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                 InvalidAlgorithmParameterException e) {
             throw new RuntimeException(e);
         }
     }
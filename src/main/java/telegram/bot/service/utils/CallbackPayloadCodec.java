@@ -0,0 +1,72 @@
+package telegram.bot.service.utils;
+
+import telegram.bot.model.CallbackPayload;
+import telegram.bot.service.enums.ButtonType;
+import telegram.bot.service.enums.UserChoiceType;
+
+import java.time.LocalDate;
+
+/**
+ * Кодирование данных кнопки (callback_data) в короткую строку фиксированного формата, без JSON и рефлексии.
+ * Формат (10 символов, лимит Telegram - 64 байта):
+ * [0] тип кнопки, [1] выбор пользователя, [2..6) день от эпохи, [6..10) номер строки - числа в base36, пустое значение - '-'.
+ * Тип кнопки и выбор кодируются порядковым номером в enum, поэтому новые значения добавляются только в конец.
+ */
+public class CallbackPayloadCodec {
+    private static final int RADIX = Character.MAX_RADIX;
+    private static final int NUMBER_LENGTH = 4;
+    private static final int LENGTH = 2 + 2 * NUMBER_LENGTH;
+    private static final char EMPTY = '-';
+    private static final ButtonType[] BUTTON_TYPES = ButtonType.values();
+    private static final UserChoiceType[] USER_CHOICES = UserChoiceType.values();
+
+    private CallbackPayloadCodec() {
+    }
+
+    public static String encode(CallbackPayload payload) {
+        var data = new StringBuilder(LENGTH);
+        data.append(Character.forDigit(payload.getButtonType().ordinal(), RADIX));
+        data.append(payload.getUserChoice() == null ? EMPTY : Character.forDigit(payload.getUserChoice().ordinal(), RADIX));
+        appendNumber(data, payload.getDate() == null ? -1 : payload.getDate().toEpochDay());
+        appendNumber(data, payload.getSheetRowNumber());
+        return data.toString();
+    }
+
+    // IllegalArgumentException, если строка не в формате кодека (например, кнопка из старого сообщения)
+    public static CallbackPayload decode(String data) {
+        if (data == null || data.length() != LENGTH) throw new IllegalArgumentException("Unsupported callback data: " + data);
+        var epochDay = parseNumber(data, 2);
+        var sheetRowNumber = parseNumber(data, 2 + NUMBER_LENGTH);
+        return CallbackPayload.builder()
+                .buttonType(BUTTON_TYPES[parseDigit(data, 0, BUTTON_TYPES.length)])
+                .userChoice(data.charAt(1) == EMPTY ? null : USER_CHOICES[parseDigit(data, 1, USER_CHOICES.length)])
+                .date(epochDay < 0 ? null : LocalDate.ofEpochDay(epochDay))
+                .sheetRowNumber((int) Math.max(sheetRowNumber, 0))
+                .build();
+    }
+
+    private static void appendNumber(StringBuilder data, long value) {
+        if (value < 0) {
+            data.append(String.valueOf(EMPTY).repeat(NUMBER_LENGTH));
+            return;
+        }
+        var digits = Long.toString(value, RADIX);
+        if (digits.length() > NUMBER_LENGTH) throw new IllegalArgumentException("Value is too big for callback data: " + value);
+        data.append("0".repeat(NUMBER_LENGTH - digits.length())).append(digits);
+    }
+
+    private static long parseNumber(String data, int offset) {
+        if (data.charAt(offset) == EMPTY) return -1;
+        try {
+            return Long.parseLong(data, offset, offset + NUMBER_LENGTH, RADIX);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unsupported callback data: " + data, e);
+        }
+    }
+
+    private static int parseDigit(String data, int offset, int limit) {
+        var digit = Character.digit(data.charAt(offset), RADIX);
+        if (digit < 0 || digit >= limit) throw new IllegalArgumentException("Unsupported callback data: " + data);
+        return digit;
+    }
+}
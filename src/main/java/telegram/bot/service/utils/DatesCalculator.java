@@ -6,16 +6,30 @@ import java.time.temporal.TemporalAdjusters;
 import java.util.List;
 
 public class DatesCalculator {
+    // столько дат показывает клавиатура выбора даты
+    public static final int NEXT_EVENT_DATES_COUNT = 4;
 
     private DatesCalculator() {
     }
 
+    // ближайшая суббота (не сегодня) - по ней определяется, для какой недели строится список дат
+    public static LocalDate getNearestEventDate() {
+        return LocalDate.now().with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
+    }
+
     public static List<LocalDate> getNextEventDates() {
-        LocalDate nearest = LocalDate.now().with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
+        LocalDate nearest = getNearestEventDate();
         LocalDate eventDayTwo = nearest.with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
         LocalDate eventDayThree = eventDayTwo.with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
         LocalDate eventDayLast = eventDayThree.with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
 
         return List.of(nearest, eventDayTwo, eventDayThree, eventDayLast);
     }
+
+    // ближайшие даты из календаря событий; если вперед заведено меньше дат - расчетные субботы
+    public static List<LocalDate> getNextEventDates(List<LocalDate> upcomingEventDates) {
+        return upcomingEventDates.size() >= NEXT_EVENT_DATES_COUNT
+                ? upcomingEventDates.subList(0, NEXT_EVENT_DATES_COUNT)
+                : getNextEventDates();
+    }
 }
@@ -0,0 +1,61 @@
+package telegram.bot.service.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Выполняет задачи на ограниченном пуле потоков, сохраняя порядок задач с одним и тем же ключом.
+ * Задачи разных ключей (разных пользователей) идут параллельно, задачи одного ключа - строго друг за другом.
+ * Когда очередь пула заполнена, задачу выполняет вызывающий поток - так получение обновлений притормаживает,
+ * а не теряет их.
+ */
+@Slf4j
+public class KeyedSerialExecutor<K> {
+    private final ThreadPoolExecutor executor;
+
+    // последняя поставленная задача каждого ключа; следующая задача ключа запускается после ее завершения
+    private final Map<K, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public KeyedSerialExecutor(String threadNamePrefix, int threads, int queueCapacity) {
+        var threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    var thread = new Thread(runnable, threadNamePrefix + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public void execute(K key, Runnable task) {
+        var done = new CompletableFuture<Void>();
+        // встаем в хвост очереди ключа; предыдущая задача ключа (если есть) запустит нас по завершении
+        var previous = tails.put(key, done);
+        Runnable keyedTask = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // ошибка задачи не должна останавливать очередь ключа
+                log.error("Error processing task for key {}", key, e);
+            } finally {
+                // очередь ключа опустела - убираем ее, чтобы мапа не росла по числу всех пользователей
+                tails.remove(key, done);
+                done.complete(null);
+            }
+        };
+        if (previous == null) executor.execute(keyedTask);
+        else previous.whenComplete((result, e) -> executor.execute(keyedTask));
+    }
+
+    public int getActiveKeysCount() {
+        return tails.size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
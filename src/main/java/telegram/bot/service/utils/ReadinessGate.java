@@ -0,0 +1,63 @@
+package telegram.bot.service.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Придерживает обновления, пришедшие до готовности хранилища, и по ее наступлении отдает их обработчику
+ * в порядке поступления. Если хранилище не загрузилось - на каждое обновление, и придержанное, и новое, отвечает отказом.
+ * Очередь ограничена: когда она заполнена, поставщик ждет готовности.
+ */
+@Slf4j
+public class ReadinessGate<T> {
+    private final CompletableFuture<?> readiness;
+    private final BlockingQueue<T> pendingItems;
+    private final Consumer<T> dispatcher;
+    private final Consumer<T> rejecter;
+    private volatile boolean isReleased = false;
+
+    public ReadinessGate(CompletableFuture<?> readiness, int capacity, Consumer<T> dispatcher, Consumer<T> rejecter) {
+        this.readiness = readiness;
+        this.pendingItems = new ArrayBlockingQueue<>(capacity);
+        this.dispatcher = dispatcher;
+        this.rejecter = rejecter;
+        // очередь отпускается по окончании загрузки - и удачной, и нет
+        readiness.whenComplete((result, e) -> release());
+    }
+
+    public void accept(T item) {
+        if (!isReleased) {
+            synchronized (pendingItems) {
+                if (!isReleased && pendingItems.offer(item)) return;
+            }
+            // очередь заполнена - ждем загрузки хранилища (Telegram придержит следующие обновления у себя)
+            if (!isReleased) {
+                log.info("Pending updates queue is full, waiting for storage");
+                readiness.exceptionally(e -> null).join();
+                release();
+            }
+        }
+        if (readiness.isCompletedExceptionally()) rejecter.accept(item);
+        else dispatcher.accept(item);
+    }
+
+    // отдает обработчику накопленные до загрузки хранилища обновления и открывает прямую обработку;
+    // если хранилище не загрузилось - отвечает на них отказом
+    private void release() {
+        synchronized (pendingItems) {
+            if (isReleased) return;
+            var isFailed = readiness.isCompletedExceptionally();
+            log.info("Storage is {}, releasing {} pending updates", isFailed ? "failed" : "ready", pendingItems.size());
+            T pendingItem;
+            while ((pendingItem = pendingItems.poll()) != null) {
+                if (isFailed) rejecter.accept(pendingItem);
+                else dispatcher.accept(pendingItem);
+            }
+            isReleased = true;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package telegram.bot.storage;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Адрес ячейки: номер строки и колонки (с 1). Одна из частей может быть не задана (0):
+ * "R3" - строка 3 целиком, "C2" - колонка 2 целиком.
+ * Основная нотация в StorageUtils - R1C1 ("R3C2"), поддерживается и A1 ("B3").
+ * Разбор посимвольный, без регулярных выражений и промежуточных строк.
+ */
+@Getter
+@EqualsAndHashCode
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class CellRef {
+    int row;
+    int column;
+
+    private CellRef(int row, int column) {
+        if (row < 0 || column < 0 || row == 0 && column == 0)
+            throw new IllegalArgumentException("Wrong cell address: row " + row + ", column " + column);
+        this.row = row;
+        this.column = column;
+    }
+
+    public static CellRef of(int row, int column) {
+        return new CellRef(row, column);
+    }
+
+    // null в любой из частей - часть адреса не задана
+    public static CellRef of(Integer row, Integer column) {
+        return new CellRef(row == null ? 0 : row, column == null ? 0 : column);
+    }
+
+    public static CellRef row(int row) {
+        return new CellRef(row, 0);
+    }
+
+    public static CellRef column(int column) {
+        return new CellRef(0, column);
+    }
+
+    public boolean hasRow() {
+        return row > 0;
+    }
+
+    public boolean hasColumn() {
+        return column > 0;
+    }
+
+    // адрес в нотации R1C1; null или пустая строка - null
+    public static CellRef parse(String address) {
+        if (address == null || address.isEmpty()) return null;
+        return parse(address, 0, address.length());
+    }
+
+    static CellRef parse(String address, int from, int to) {
+        int index = from;
+        int row = 0;
+        int column = 0;
+        if (index < to && address.charAt(index) == 'R') {
+            var digitsEnd = digitsEnd(address, ++index, to);
+            row = parseNumber(address, index, digitsEnd);
+            if (row == 0) throw unsupported(address);
+            index = digitsEnd;
+        }
+        if (index < to && address.charAt(index) == 'C') {
+            var digitsEnd = digitsEnd(address, ++index, to);
+            column = parseNumber(address, index, digitsEnd);
+            if (column == 0) throw unsupported(address);
+            index = digitsEnd;
+        }
+        if (index != to || index == from) throw unsupported(address);
+        return new CellRef(row, column);
+    }
+
+    // адрес в нотации A1 ("B3", "B" - колонка целиком, "3" - строка целиком; "$" игнорируется)
+    public static CellRef parseA1(String address) {
+        if (address == null || address.isEmpty()) return null;
+        int index = 0;
+        int column = 0;
+        if (address.charAt(index) == '$') index++;
+        while (index < address.length() && Character.isLetter(address.charAt(index))) {
+            var letter = Character.toUpperCase(address.charAt(index++));
+            if (letter < 'A' || letter > 'Z' || column > Integer.MAX_VALUE / 26 - 26) throw unsupported(address);
+            column = column * 26 + letter - 'A' + 1;
+        }
+        if (index < address.length() && address.charAt(index) == '$') index++;
+        var digitsEnd = digitsEnd(address, index, address.length());
+        var row = digitsEnd > index ? parseNumber(address, index, digitsEnd) : 0;
+        if (digitsEnd != address.length()) throw unsupported(address);
+        return new CellRef(row, column);
+    }
+
+    // "R3C2", "R3", "C2"
+    @Override
+    public String toString() {
+        var address = new StringBuilder(12);
+        if (hasRow()) address.append('R').append(row);
+        if (hasColumn()) address.append('C').append(column);
+        return address.toString();
+    }
+
+    // "B3", "3", "B"
+    public String toA1() {
+        var address = new StringBuilder(12);
+        if (hasColumn()) appendColumnLetters(address, column);
+        if (hasRow()) address.append(row);
+        return address.toString();
+    }
+
+    private static void appendColumnLetters(StringBuilder address, int column) {
+        var start = address.length();
+        for (int rest = column; rest > 0; rest = (rest - 1) / 26) address.insert(start, (char) ('A' + (rest - 1) % 26));
+    }
+
+    private static int digitsEnd(String address, int from, int to) {
+        int index = from;
+        while (index < to && address.charAt(index) >= '0' && address.charAt(index) <= '9') index++;
+        return index;
+    }
+
+    private static int parseNumber(String address, int from, int to) {
+        if (from == to) throw unsupported(address);
+        try {
+            return Integer.parseInt(address, from, to, 10);
+        } catch (NumberFormatException e) {
+            throw unsupported(address);
+        }
+    }
+
+    private static IllegalArgumentException unsupported(String address) {
+        return new IllegalArgumentException("Unsupported cell address: " + address);
+    }
+}
@@ -0,0 +1,7 @@
+package telegram.bot.storage;
+
+import java.util.List;
+
+// запись, которую таблица окончательно отвергла после подтверждения (отложенная запись, SheetWriteRejectedException)
+public record FailedWrite(String sheetName, RangeRef range, List<List<Object>> values) {
+}
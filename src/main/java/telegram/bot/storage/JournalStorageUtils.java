@@ -0,0 +1,296 @@
+package telegram.bot.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Хранилище ячеек на основе журнала: каждая запись дописывается в конец файла журнала и применяется к копии таблицы
+ * в памяти, чтения обслуживаются из памяти. Журнал сбрасывается на диск (fsync) пакетами по таймеру,
+ * при разрастании журнала состояние сохраняется снимком, а журнал обнуляется. При старте состояние
+ * восстанавливается из снимка и журнала. Таблица (Excel/Google) становится отчетом, который выгружается по запросу.
+ */
+@Slf4j
+public class JournalStorageUtils implements StorageUtils {
+    private static final int SNAPSHOT_MAGIC = 0x4A524E31; // "JRN1"
+    private static final RangeRef SHEET_START = RangeRef.of(CellRef.of(1, 1));
+
+    private final Path snapshotPath;
+    private final long compactionThresholdBytes;
+    private final WriteRecordLog journal;
+    private final ScheduledExecutorService syncExecutor;
+
+    // лист -> строка -> колонка -> значение (нумерация с 0); пустые ячейки не хранятся
+    private final Map<String, TreeMap<Integer, TreeMap<Integer, String>>> sheets = new HashMap<>();
+    private boolean isJournalDirty = false;
+
+    public JournalStorageUtils(String journalDir, long fsyncIntervalMilliSec, long compactionThresholdBytes) {
+        try {
+            var dir = Files.createDirectories(Path.of(journalDir));
+            this.snapshotPath = dir.resolve("snapshot.bin");
+            this.compactionThresholdBytes = compactionThresholdBytes;
+            loadSnapshot();
+            this.journal = new WriteRecordLog(dir.resolve("journal.log"));
+            // записи журнала применяются поверх снимка
+            log.info("Journal is replayed: {} records", journal.replay(this::applyRecord));
+        } catch (IOException e) {
+            log.error("Error opening journal", e);
+            throw new RuntimeException(e);
+        }
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMilliSec, fsyncIntervalMilliSec, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::sync, "journal-sync-shutdown"));
+    }
+
+    // журнал и снимок пусты - хранилище нужно заполнить из таблицы
+    public synchronized boolean isEmpty() {
+        return sheets.isEmpty();
+    }
+
+    @Override
+    public boolean writeCellValue(String sheetName, CellRef cell, String cellValue) {
+        return writesValues(sheetName, RangeRef.of(cell), List.of(List.of(cellValue)));
+    }
+
+    @Override
+    public boolean writesValues(String sheetName, RangeRef range, List<List<Object>> values) {
+        return writeValuesBatch(sheetName, Map.of(range, values));
+    }
+
+    @Override
+    public synchronized boolean writeValuesBatch(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        try {
+            // запись считается выполненной, когда попала в журнал; fsync делает фоновый поток
+            journal.append(sheetName, valuesByRange);
+        } catch (IOException e) {
+            log.error("Error writing journal", e);
+            throw new RuntimeException(e);
+        }
+        isJournalDirty = true;
+        applyRecord(sheetName, valuesByRange);
+        if (journalSize() >= compactionThresholdBytes) syncExecutor.execute(this::compactQuietly);
+        return true;
+    }
+
+    @Override
+    public List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd) {
+        List<String> valuesList = new LinkedList<>();
+        readValuesRange(sheetName, rangeBegin, rangeEnd).forEach(values -> valuesList.add(!values.isEmpty() ? values.get(0) : ""));
+        return valuesList;
+    }
+
+    @Override
+    public List<List<List<String>>> readValuesRanges(List<SheetRange> ranges) {
+        return RowVisitor.collect(ranges.size(), visitor -> visitValuesRanges(ranges, visitor));
+    }
+
+    @Override
+    public synchronized void visitValuesRanges(List<SheetRange> ranges, RowVisitor visitor) {
+        for (int rangeIndex = 0; rangeIndex < ranges.size(); rangeIndex++) {
+            var range = ranges.get(rangeIndex);
+            var sheet = sheets.get(range.getSheetName());
+            if (sheet == null) throw new RuntimeException("Sheet not found: " + range.getSheetName());
+            var collector = new StreamingExcelReader.RangeCollector(range, rangeIndex, visitor);
+            if (collector.getFirstRowIndex() <= collector.getLastRowIndex())
+                sheet.subMap(collector.getFirstRowIndex(), true, collector.getLastRowIndex(), true)
+                        .forEach((rowIndex, row) -> row.forEach((columnIndex, value) -> collector.accept(rowIndex, columnIndex, value)));
+            collector.finish();
+        }
+    }
+
+    @Override
+    public LocalDateTime getSheetLastUpdateTime() {
+        // журнал меняется только через нас, кэш Storage всегда актуален
+        return LocalDateTime.MIN;
+    }
+
+    // заполняет хранилище листами из таблицы и сразу сохраняет снимок
+    public void importFrom(StorageUtils source, List<String> sheetNames) {
+        var sheetValues = source.readValuesRanges(sheetNames.stream().map(SheetRange::wholeSheet).toList());
+        for (int sheetIndex = 0; sheetIndex < sheetNames.size(); sheetIndex++) {
+            List<List<Object>> values = new ArrayList<>();
+            sheetValues.get(sheetIndex).forEach(row -> values.add(new ArrayList<>(row)));
+            writesValues(sheetNames.get(sheetIndex), SHEET_START, values);
+        }
+        compact();
+        log.info("Journal is imported from sheets {}", sheetNames);
+    }
+
+    // выгружает текущее состояние в таблицу: каждый лист одной записью, начиная с R1C1. Запись покрывает и все,
+    // что сейчас заполнено в таблице: ячейки, очищенные в журнале, в таблице тоже очищаются
+    public void exportTo(StorageUtils target) {
+        Map<String, List<List<Object>>> sheetValues = new LinkedHashMap<>();
+        synchronized (this) {
+            sheets.forEach((sheetName, sheet) -> {
+                var lastColumnIndex = sheet.values().stream().mapToInt(TreeMap::lastKey).max().orElse(-1);
+                List<List<Object>> values = new ArrayList<>();
+                for (int rowIndex = 0; !sheet.isEmpty() && rowIndex <= sheet.lastKey(); rowIndex++) {
+                    var row = sheet.getOrDefault(rowIndex, new TreeMap<>());
+                    List<Object> rowValues = new ArrayList<>(lastColumnIndex + 1);
+                    for (int columnIndex = 0; columnIndex <= lastColumnIndex; columnIndex++)
+                        rowValues.add(row.getOrDefault(columnIndex, ""));
+                    values.add(rowValues);
+                }
+                sheetValues.put(sheetName, values);
+            });
+        }
+        var sheetNames = List.copyOf(sheetValues.keySet());
+        try {
+            var targetValues = target.readValuesRanges(sheetNames.stream().map(SheetRange::wholeSheet).toList());
+            for (int sheetIndex = 0; sheetIndex < sheetNames.size(); sheetIndex++)
+                padToExtent(sheetValues.get(sheetNames.get(sheetIndex)), targetValues.get(sheetIndex));
+        } catch (RuntimeException e) {
+            // листа в таблице еще нет (первая выгрузка) - очищать нечего
+            log.error("Error reading export target, stale cells are not cleared", e);
+        }
+        sheetValues.forEach((sheetName, values) -> target.writesValues(sheetName, SHEET_START, values));
+        log.info("Journal is exported to sheets {}", sheetValues.keySet());
+    }
+
+    // дополняет матрицу пустыми значениями до размеров заполненной части листа таблицы
+    private static void padToExtent(List<List<Object>> values, List<List<String>> targetValues) {
+        var columnsCount = Math.max(
+                values.stream().mapToInt(List::size).max().orElse(0),
+                targetValues.stream().mapToInt(List::size).max().orElse(0));
+        while (values.size() < targetValues.size()) values.add(new ArrayList<>());
+        for (List<Object> rowValues : values)
+            while (rowValues.size() < columnsCount) rowValues.add("");
+    }
+
+    // сбрасывает журнал на диск, если в него что-то дописано с прошлого сброса
+    public void sync() {
+        synchronized (this) {
+            if (!isJournalDirty) return;
+            isJournalDirty = false;
+        }
+        try {
+            journal.force();
+        } catch (IOException e) {
+            synchronized (this) {
+                isJournalDirty = true;
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    // сохраняет состояние снимком (временный файл + атомарное переименование) и обнуляет журнал
+    public synchronized void compact() {
+        try {
+            var temp = Files.createTempFile(snapshotPath.getParent(), "snapshot", ".tmp");
+            try {
+                try (var fileOutput = new FileOutputStream(temp.toFile());
+                     var output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+                    output.writeInt(SNAPSHOT_MAGIC);
+                    output.writeInt(sheets.size());
+                    for (var sheet : sheets.entrySet()) {
+                        writeString(output, sheet.getKey());
+                        output.writeInt(sheet.getValue().values().stream().mapToInt(TreeMap::size).sum());
+                        for (var row : sheet.getValue().entrySet())
+                            for (var cell : row.getValue().entrySet()) {
+                                output.writeInt(row.getKey());
+                                output.writeInt(cell.getKey());
+                                writeString(output, cell.getValue());
+                            }
+                    }
+                    output.flush();
+                    fileOutput.getFD().sync();
+                }
+                try {
+                    Files.move(temp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            // снимок уже содержит все записи журнала
+            journal.clear();
+            isJournalDirty = false;
+        } catch (IOException e) {
+            log.error("Error compacting journal", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.error("Error syncing journal, will retry", e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            if (journalSize() >= compactionThresholdBytes) compact();
+        } catch (RuntimeException e) {
+            log.error("Error compacting journal", e);
+        }
+    }
+
+    private long journalSize() {
+        try {
+            return journal.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) return;
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (input.readInt() != SNAPSHOT_MAGIC) throw new IOException("Unknown snapshot format: " + snapshotPath);
+            var sheetsCount = input.readInt();
+            for (int sheetIndex = 0; sheetIndex < sheetsCount; sheetIndex++) {
+                var sheet = sheets.computeIfAbsent(readString(input), sheetName -> new TreeMap<>());
+                var cellsCount = input.readInt();
+                for (int cellIndex = 0; cellIndex < cellsCount; cellIndex++) {
+                    var rowIndex = input.readInt();
+                    var columnIndex = input.readInt();
+                    sheet.computeIfAbsent(rowIndex, row -> new TreeMap<>()).put(columnIndex, readString(input));
+                }
+            }
+        }
+    }
+
+    private void applyRecord(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        var sheet = sheets.computeIfAbsent(sheetName, name -> new TreeMap<>());
+        valuesByRange.forEach((range, values) -> {
+            // значения кладутся начиная с левой верхней ячейки диапазона
+            var start = range.getBegin();
+            for (int i = 0; i < values.size(); i++)
+                for (int j = 0; j < values.get(i).size(); j++) {
+                    var rowIndex = Math.max(start.getRow(), 1) - 1 + i;
+                    var columnIndex = Math.max(start.getColumn(), 1) - 1 + j;
+                    var value = String.valueOf(values.get(i).get(j));
+                    if (value.isEmpty()) {
+                        var row = sheet.get(rowIndex);
+                        if (row != null && row.remove(columnIndex) != null && row.isEmpty()) sheet.remove(rowIndex);
+                    } else sheet.computeIfAbsent(rowIndex, row -> new TreeMap<>()).put(columnIndex, value);
+                }
+        });
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        var bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
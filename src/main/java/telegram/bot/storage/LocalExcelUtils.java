@@ -1,11 +1,10 @@
 package telegram.bot.storage;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
@@ -16,19 +15,60 @@ import telegram.bot.model.Participation;
 import telegram.bot.model.Volunteer;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Slf4j
-@RequiredArgsConstructor
 public class LocalExcelUtils implements StorageUtils {
     private final String pathToExcelFile;
+    // чтение диапазонов идет потоково, без загрузки всей книги
+    private final StreamingExcelReader excelReader;
     public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
 
+    // резидентный режим: книга держится открытой, записи применяются в памяти и сбрасываются на диск
+    // по таймеру или при накоплении порога изменений
+    private final long flushIntervalMilliSec;
+    private final int flushThreshold;
+    private final DataFormatter dataFormatter = new DataFormatter();
+    private final Object flushLock = new Object();
+    private XSSFWorkbook residentWorkbook;
+    private int dirtyCount = 0;
+    private ScheduledExecutorService flushExecutor;
+
+    public LocalExcelUtils(String pathToExcelFile) {
+        this(pathToExcelFile, 0, 0);
+    }
+
+    // при нулевом интервале книга читается и записывается с диска на каждое обращение
+    public LocalExcelUtils(String pathToExcelFile, long flushIntervalMilliSec, int flushThreshold) {
+        this.pathToExcelFile = pathToExcelFile;
+        this.excelReader = new StreamingExcelReader(pathToExcelFile);
+        this.flushIntervalMilliSec = flushIntervalMilliSec;
+        this.flushThreshold = flushThreshold;
+        if (isResident()) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "excel-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMilliSec, flushIntervalMilliSec, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "excel-flush-shutdown"));
+        }
+    }
+
+    public boolean isResident() {
+        return flushIntervalMilliSec > 0;
+    }
+
     public void initExcelFile(Map<String, Volunteer> contacts, Map<LocalDate, Event> events) {
         /*File f = new File(pathToExcelFile);
         if (!f.exists()) {
@@ -39,20 +79,28 @@ public class LocalExcelUtils implements StorageUtils {
         }*/
         File f = new File(pathToExcelFile);
         //if (!f.exists()) {
+        flush();
         writeContactsToExcel(contacts);
         writeVolunteersToExcel(events);
+        reloadResidentWorkbook();
         // } else {
         //  log.info("File exists");
         //}
     }
 
     @Override
-    public boolean writeCellValue(String sheetName, String cellAddress, String cellValue) {
-        return writesValues(sheetName, cellAddress, List.of(List.of(cellValue)));
+    public boolean writeCellValue(String sheetName, CellRef cell, String cellValue) {
+        return writesValues(sheetName, RangeRef.of(cell), List.of(List.of(cellValue)));
+    }
+
+    @Override
+    public boolean writesValues(String sheetName, RangeRef range, List<List<Object>> values) {
+        return writeValuesBatch(sheetName, Map.of(range, values));
     }
 
     @Override
-    public boolean writesValues(String sheetName, String cellAddress, List<List<Object>> values) {
+    public boolean writeValuesBatch(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        if (isResident()) return writeValuesResident(sheetName, valuesByRange);
         File file = new File(pathToExcelFile);
         if (!file.exists()) {
             log.info("File not found");
@@ -69,21 +117,8 @@ public class LocalExcelUtils implements StorageUtils {
         int sheetIndex = workbook.getSheetIndex(sheetName);
         if (sheetIndex != -1) {
             Sheet sheet = workbook.getSheet(sheetName);
-            int offsetRow = getNumberCell(cellAddress, 1, -1) - 1;
-            int offsetCell = getNumberCell(cellAddress, 2, -1) - 1;
-            for (int i = 0; i < values.size(); i++) {
-                for (int j = 0; j < values.get(i).size(); j++) {
-                    Row row = sheet.getRow(i + offsetRow);
-                    if (row == null) {
-                        row = sheet.createRow(i + offsetRow);
-                    }
-                    Cell cell = row.getCell(j + offsetCell);
-                    if (cell == null) {
-                        cell = row.createCell(j + offsetCell);
-                    }
-                    cell.setCellValue(values.get(i).get(j).toString());
-                }
-            }
+            // все изменения применяем к одной открытой книге и сохраняем ее один раз
+            valuesByRange.forEach((range, values) -> setValues(sheet, range, values));
         } else {
             log.info("Лист '" + sheetName + "' не существует.");
             return false;
@@ -98,60 +133,146 @@ public class LocalExcelUtils implements StorageUtils {
         }
     }
 
-    @Override
-    public List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd) {
-        return readValuesFromList(sheetName, rangeBegin, rangeEnd, 0);
+    private boolean writeValuesResident(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        boolean thresholdReached;
+        synchronized (this) {
+            Sheet sheet = getResidentWorkbook().getSheet(sheetName);
+            if (sheet == null) {
+                log.info("Лист '" + sheetName + "' не существует.");
+                return false;
+            }
+            valuesByRange.forEach((range, values) -> setValues(sheet, range, values));
+            dirtyCount += valuesByRange.size();
+            thresholdReached = dirtyCount >= flushThreshold;
+        }
+        if (thresholdReached) flushExecutor.execute(this::flushQuietly);
+        return true;
     }
 
-    @Override
-    public List<List<String>> readValuesRange(String sheetName, String rangeBegin, String rangeEnd) {
-        List<List<String>> values = new LinkedList<>();
-        Map<Integer, List<String>> dataFromListExcel = new HashMap<>();
-        try (InputStream ExcelFileToRead = new FileInputStream(pathToExcelFile); XSSFWorkbook wb = new XSSFWorkbook(ExcelFileToRead)) {
-            XSSFSheet sheet = wb.getSheet(sheetName);
-            int columnCount = columnCount(sheet);
-            int rowCount = sheet.getLastRowNum();
+    // сохраняет изменения резидентной книги: пишем во временный файл рядом и атомарно подменяем им основной,
+    // так что на диске всегда лежит целая книга - старая или новая
+    public void flush() {
+        if (!isResident()) return;
+        synchronized (flushLock) {
+            var bytes = new ByteArrayOutputStream();
+            int flushedCount;
+            synchronized (this) {
+                if (dirtyCount == 0 || residentWorkbook == null) return;
+                try {
+                    residentWorkbook.write(bytes);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                flushedCount = dirtyCount;
+                dirtyCount = 0;
+            }
+            try {
+                var target = Path.of(pathToExcelFile).toAbsolutePath();
+                var temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                try {
+                    Files.write(temp, bytes.toByteArray());
+                    moveAtomically(temp, target);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                // изменения остаются в памяти и будут сохранены следующим сбросом
+                synchronized (this) {
+                    dirtyCount += flushedCount;
+                }
+                throw new RuntimeException(e);
+            }
+        }
+    }
 
-            int rangeEndRow = getNumberCell(rangeEnd, 1, rowCount);
-            int rangeEndColumn = getNumberCell(rangeEnd, 2, columnCount);
-            XSSFRow row;
-            XSSFCell cell;
-            Iterator<Row> rows = sheet.rowIterator();
-            int skipRowNumbers = getNumberCell(rangeBegin, 1, 0);
-            int rowNum = 0;
-            while (rows.hasNext() && rowNum <= rangeEndRow) {
-                while (rowNum < skipRowNumbers - 1) {
-                    if (rows.hasNext()) {
-                        row = (XSSFRow) rows.next();
-                        row.getLastCellNum();
-                        rowNum++;
-                    }
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Error flushing excel file, will retry", e);
+        }
+    }
+
+    private void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private XSSFWorkbook getResidentWorkbook() {
+        if (residentWorkbook == null) {
+            try (FileInputStream fileinp = new FileInputStream(pathToExcelFile)) {
+                residentWorkbook = new XSSFWorkbook(fileinp);
+            } catch (IOException e) {
+                log.info("Error creating FileInputStream");
+                throw new RuntimeException(e);
+            }
+        }
+        return residentWorkbook;
+    }
+
+    // книгу переписали в обход резидентной копии - перечитаем ее при следующем обращении
+    private void reloadResidentWorkbook() {
+        if (!isResident()) return;
+        synchronized (this) {
+            residentWorkbook = null;
+            dirtyCount = 0;
+        }
+    }
+
+    // читает диапазоны из резидентной книги так же, как потоковое чтение из файла
+    private synchronized void visitValuesResident(List<SheetRange> ranges, RowVisitor visitor) {
+        var workbook = getResidentWorkbook();
+        for (int rangeIndex = 0; rangeIndex < ranges.size(); rangeIndex++) {
+            var range = ranges.get(rangeIndex);
+            var sheet = workbook.getSheet(range.getSheetName());
+            if (sheet == null) throw new RuntimeException("Sheet not found: " + range.getSheetName());
+            var collector = new StreamingExcelReader.RangeCollector(range, rangeIndex, visitor);
+            var lastRowIndex = Math.min(sheet.getLastRowNum(), collector.getLastRowIndex());
+            for (int rowIndex = collector.getFirstRowIndex(); rowIndex <= lastRowIndex; rowIndex++) {
+                var row = sheet.getRow(rowIndex);
+                if (row == null) continue;
+                for (Cell cell : row) collector.accept(rowIndex, cell.getColumnIndex(), dataFormatter.formatCellValue(cell));
+            }
+            collector.finish();
+        }
+    }
+
+    private void setValues(Sheet sheet, RangeRef range, List<List<Object>> values) {
+        int offsetRow = Math.max(range.getBegin().getRow(), 1) - 1;
+        int offsetCell = Math.max(range.getBegin().getColumn(), 1) - 1;
+        for (int i = 0; i < values.size(); i++) {
+            for (int j = 0; j < values.get(i).size(); j++) {
+                Row row = sheet.getRow(i + offsetRow);
+                if (row == null) {
+                    row = sheet.createRow(i + offsetRow);
                 }
-                int skipColumnNumbers = getNumberCell(rangeBegin, 2, 0);
-                int columnNum = 0;
-                List<String> fromRow = new ArrayList<>();
-                row = (XSSFRow) rows.next();
-                Iterator<Cell> cells = row.cellIterator();
-                while (cells.hasNext() && columnNum <= rangeEndColumn) {
-                    while (columnNum < skipColumnNumbers - 1) {
-                        if (cells.hasNext()) {
-                            cell = (XSSFCell) cells.next();
-                            columnNum++;
-                        }
-                    }
-                    cell = (XSSFCell) cells.next();
-                    fromRow.add(cell.getStringCellValue());
-                    columnNum++;
+                Cell cell = row.getCell(j + offsetCell);
+                if (cell == null) {
+                    cell = row.createCell(j + offsetCell);
                 }
-                dataFromListExcel.put(rowNum, fromRow);
-                values.add(fromRow);
-                rowNum++;
+                cell.setCellValue(values.get(i).get(j).toString());
             }
-        } catch (Exception e) {
-            log.info("Error creating FileInputStream");
-            throw new RuntimeException(e);
         }
-        return values;
+    }
+
+    @Override
+    public List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd) {
+        return readValuesFromList(sheetName, rangeBegin, rangeEnd, 0);
+    }
+
+    @Override
+    public List<List<List<String>>> readValuesRanges(List<SheetRange> ranges) {
+        return RowVisitor.collect(ranges.size(), visitor -> visitValuesRanges(ranges, visitor));
+    }
+
+    @Override
+    public void visitValuesRanges(List<SheetRange> ranges, RowVisitor visitor) {
+        if (isResident()) visitValuesResident(ranges, visitor);
+        // все диапазоны читаем за один проход по файлу
+        else excelReader.visit(ranges, visitor);
     }
 
     private void writeContactsToExcel(Map<String, Volunteer> contacts) {
@@ -243,6 +364,7 @@ public class LocalExcelUtils implements StorageUtils {
     }
 
     public void writeVolunteersToExcelSave(Map<LocalDate, Event> volunteers) {
+        flush();
         // Add a sheet into Existing workbook
         XSSFWorkbook workbook = null;
         try (FileInputStream fileinp = new FileInputStream(pathToExcelFile)) {
@@ -265,6 +387,7 @@ public class LocalExcelUtils implements StorageUtils {
             workbook.write(fileOut);
             fileOut.close();
             log.info("File is written successfully");
+            reloadResidentWorkbook();
         } catch (Exception e) {
             log.info("Error creating FileOutputStream");
             throw new RuntimeException(e);
@@ -321,39 +444,4 @@ public class LocalExcelUtils implements StorageUtils {
     private int findMinColNumber(Map<LocalDate, Event> events) {
         Event minColumnNumberEvent = events.values().stream().min(Comparator.comparingInt(event -> event.getColumnNumber())).get();
         return minColumnNumberEvent.getColumnNumber();
-    }
-
-    private int addressPartCell(String range, int numberPart, int defaultValue) {
-        if (range == null) {
-            return defaultValue;
-        }
-        CellReference cr = new CellReference(range);
-        int[] address = new int[]{cr.getRow(), cr.getCol()};
-
-        return address[numberPart];
-    }
-
-    private int getNumberCell(String rangeBegin, int numberGroup, int defaultValue) {
-        Pattern pattern = Pattern.compile(".*?(\\d+).*(\\d+).*");
-        Matcher matcher = pattern.matcher(rangeBegin);
-        String numberStr = String.valueOf(defaultValue);
-        if (matcher.find()) {
-            numberStr = matcher.group(numberGroup);
-        }
-        return Integer.parseInt(numberStr);
-    }
-
-    private int columnCount(XSSFSheet sheet) {
-        XSSFRow row;
-        int max = 0;
-        Iterator<Row> rows = sheet.rowIterator();
-        while (rows.hasNext()) {
-            row = (XSSFRow) rows.next();
-            int lastCellNum = row.getLastCellNum();
-            if (lastCellNum > max) {
-                max = lastCellNum;
-            }
-        }
-        return max;
-    }
-}
\ No newline at end of file
+    }}
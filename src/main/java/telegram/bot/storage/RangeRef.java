@@ -0,0 +1,50 @@
+package telegram.bot.storage;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Objects;
+
+/**
+ * Диапазон ячеек для записи: левая верхняя ячейка и, если задана, правая нижняя ("R3C1:R3C7").
+ * Если правая нижняя ячейка не задана, диапазон определяется размером записываемой матрицы.
+ */
+@Getter
+@EqualsAndHashCode
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class RangeRef {
+    CellRef begin;
+    CellRef end;
+
+    private RangeRef(CellRef begin, CellRef end) {
+        this.begin = Objects.requireNonNull(begin);
+        this.end = end;
+    }
+
+    public static RangeRef of(CellRef begin) {
+        return new RangeRef(begin, null);
+    }
+
+    public static RangeRef of(CellRef begin, CellRef end) {
+        return new RangeRef(begin, end);
+    }
+
+    // диапазон в нотации R1C1 ("R3C1" или "R3C1:R3C7")
+    public static RangeRef parse(String range) {
+        if (range == null || range.isEmpty()) throw new IllegalArgumentException("Unsupported range: " + range);
+        var separator = range.indexOf(':');
+        if (separator < 0) return new RangeRef(CellRef.parse(range, 0, range.length()), null);
+        return new RangeRef(CellRef.parse(range, 0, separator), CellRef.parse(range, separator + 1, range.length()));
+    }
+
+    @Override
+    public String toString() {
+        return end == null ? begin.toString() : begin + ":" + end;
+    }
+
+    public String toA1() {
+        return end == null ? begin.toA1() : begin.toA1() + ":" + end.toA1();
+    }
+}
@@ -0,0 +1,23 @@
+package telegram.bot.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// получатель строк при потоковом чтении диапазонов (StorageUtils.visitValuesRanges).
+// строки каждого диапазона приходят по порядку по мере разбора; пустые строки между непустыми передаются пустым списком,
+// пустые строки в конце диапазона не передаются - так же, как в матрице readValuesRanges
+@FunctionalInterface
+public interface RowVisitor {
+
+    // rangeIndex - номер диапазона в запросе, rowIndex - номер строки от начала диапазона (с 0)
+    void visitRow(int rangeIndex, int rowIndex, List<String> row);
+
+    // собирает переданные строки в матрицы, по одной на диапазон
+    static List<List<List<String>>> collect(int rangesCount, Consumer<RowVisitor> reader) {
+        List<List<List<String>>> values = new ArrayList<>(rangesCount);
+        for (int i = 0; i < rangesCount; i++) values.add(new ArrayList<>());
+        reader.accept((rangeIndex, rowIndex, row) -> values.get(rangeIndex).add(row));
+        return values;
+    }
+}
@@ -0,0 +1,49 @@
+package telegram.bot.storage;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Objects;
+
+// диапазон ячеек на листе для пакетного чтения; rangeBegin/rangeEnd - адреса ячеек (CellRef), как в StorageUtils.
+// если rangeBegin и rangeEnd не заданы - читается весь лист
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class SheetRange {
+    String sheetName;
+    CellRef rangeBegin;
+    CellRef rangeEnd;
+
+    public static SheetRange of(String sheetName, CellRef rangeBegin, CellRef rangeEnd) {
+        return new SheetRange(sheetName, rangeBegin, rangeEnd);
+    }
+
+    // адреса в нотации R1C1
+    public static SheetRange of(String sheetName, String rangeBegin, String rangeEnd) {
+        return new SheetRange(sheetName, CellRef.parse(rangeBegin), CellRef.parse(rangeEnd));
+    }
+
+    public static SheetRange wholeSheet(String sheetName) {
+        return new SheetRange(sheetName, null, null);
+    }
+
+    // обратное к toString: "Лист!R1C1:C3" или имя листа целиком
+    public static SheetRange parse(String range) {
+        var separator = range.lastIndexOf('!');
+        if (separator < 0) return wholeSheet(range);
+        var rangeRef = RangeRef.parse(range.substring(separator + 1));
+        return new SheetRange(range.substring(0, separator), rangeRef.getBegin(), rangeRef.getEnd());
+    }
+
+    public boolean isWholeSheet() {
+        return Objects.isNull(rangeBegin) && Objects.isNull(rangeEnd);
+    }
+
+    @Override
+    public String toString() {
+        return isWholeSheet() ? sheetName : sheetName + "!" + rangeBegin + ":" + rangeEnd;
+    }
+}
@@ -0,0 +1,11 @@
+package telegram.bot.storage;
+
+/**
+ * Таблица окончательно отвергла запись (неверный диапазон, защищенная ячейка и т.п.): повтор той же записи не поможет.
+ * Остальные ошибки записи (сеть, превышение квоты, сбой на стороне таблицы) считаются временными.
+ */
+public class SheetWriteRejectedException extends RuntimeException {
+    public SheetWriteRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -5,6 +5,8 @@ import telegram.bot.adapter.TelegramBotStorage;
 import telegram.bot.config.BotConfiguration;
 import telegram.bot.model.Event;
 import telegram.bot.model.Participation;
+import telegram.bot.model.Roster;
+import telegram.bot.model.Vacancies;
 import telegram.bot.model.Volunteer;
 import telegram.bot.service.utils.AESUtil;
 
@@ -13,140 +15,472 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.TemporalAdjusters;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Slf4j
 public abstract class Storage implements TelegramBotStorage {
     protected AESUtil aesUtil;
     protected StorageUtils storageUtils;
-    protected Map<String, Volunteer> contacts;
-    protected Map<LocalDate, Event> events;
-    protected List<String> mainRoles;
-    protected volatile LocalDateTime cacheLastUpdateTime;
+    // кэш целиком: читатели берут текущий снимок и работают с ним, писатели (synchronized) строят новый
+    // снимок и публикуют его одной записью - перезагрузка кэша не может показать читателю наполовину обновленные данные
+    protected volatile StorageSnapshot snapshot = StorageSnapshot.empty();
+    protected volatile LocalDateTime cacheLastUpdateTime = LocalDateTime.MIN;
+    // файл для быстрого старта; null - быстрый старт выключен
+    protected WarmStartSnapshotFile warmStartFile;
+    // завершается после первой загрузки кэша
+    protected final CompletableFuture<Void> readiness = new CompletableFuture<>();
+    // завершается, когда кэш сверен с таблицей; после быстрого старта записи ждут сверки,
+    // иначе по устаревшему файлу можно занять позицию, которая в таблице уже занята
+    protected final CompletableFuture<Void> writability = new CompletableFuture<>();
+    // кэш собирается из файла быстрого старта: таблицу не меняем, изменения откладываются до загрузки после сверки
+    private boolean isApplyingWarmSnapshot = false;
+    private boolean isSheetUpdateDeferred = false;
+    // время последней проверки таблицы на изменения (System.currentTimeMillis)
+    private volatile long sheetLastCheckTimeMillis;
     private volatile boolean isStorageSyncStarted = false;
+    // проверка таблицы, запущенная обращением к хранилищу, уже идет
+    private final AtomicBoolean isSheetCheckRunning = new AtomicBoolean(false);
 
     @Override
     public Volunteer saveVolunteer(Volunteer volunteer) {
-        if (!checkIfCacheIsObsoletedAndUpdateIfNeeded() && !contacts.containsKey(volunteer.getFullName()) && Objects.nonNull(mergeVolunteerToSheet(volunteer))) {
-            contacts.put(volunteer.getFullName(), volunteer);
+        awaitWritability();
+        synchronized (this) {
+            checkCacheInBackgroundIfNeeded();
+            if (snapshot.getContacts().containsKey(volunteer.getFullName())) return null;
+            // новый контакт пишется в строку под последним; номер строки запоминаем, чтобы следующее обновление попало в нее же
+            var isNewRow = Objects.isNull(volunteer.getSheetRowNumber());
+            if (isNewRow) volunteer.setSheetRowNumber(BotConfiguration.getSheetContactsRowStart() + snapshot.getContacts().size());
+            if (Objects.isNull(mergeVolunteerToSheet(volunteer))) {
+                if (isNewRow) volunteer.setSheetRowNumber(null);
+                return null;
+            }
+            snapshot = snapshot.withVolunteer(volunteer);
             cacheLastUpdateTime = LocalDateTime.now();
             return volunteer;
-        } else return null;
+        }
     }
 
     @Override
     public Volunteer updateVolunteer(Volunteer volunteer) {
-        if (!checkIfCacheIsObsoletedAndUpdateIfNeeded() && Objects.nonNull(mergeVolunteerToSheet(volunteer))) {
-            cacheLastUpdateTime = LocalDateTime.now();
-            return volunteer;
-        } else return null;
+        awaitWritability();
+        synchronized (this) {
+            checkCacheInBackgroundIfNeeded();
+            if (Objects.nonNull(mergeVolunteerToSheet(volunteer))) {
+                // волонтер мог поменять телеграм, код или id - снимок переиндексирует его
+                snapshot = snapshot.withVolunteer(volunteer);
+                cacheLastUpdateTime = LocalDateTime.now();
+                return volunteer;
+            } else return null;
+        }
     }
 
     @Override
     public Volunteer getVolunteerByTgUserName(String tgUserName) {
-        checkIfCacheIsObsoletedAndUpdateIfNeeded();
-        return contacts.values().stream().filter(volunteer -> Objects.equals(volunteer.getTgUserName(), tgUserName)).findFirst().orElse(null);
+        checkCacheInBackgroundIfNeeded();
+        return Objects.isNull(tgUserName) ? null : snapshot.getContactsByTgUserName().get(tgUserName);
     }
 
     @Override
     public Volunteer getVolunteerByCode(String code) {
-        checkIfCacheIsObsoletedAndUpdateIfNeeded();
-        return contacts.values().stream().filter(volunteer -> Objects.equals(volunteer.getCode(), code)).findFirst().orElse(null);
+        checkCacheInBackgroundIfNeeded();
+        return Objects.isNull(code) ? null : snapshot.getContactsByCode().get(code);
+    }
+
+    @Override
+    public Volunteer getVolunteerByTgUserId(Long tgUserId) {
+        checkCacheInBackgroundIfNeeded();
+        return Objects.isNull(tgUserId) ? null : snapshot.getContactsByTgUserId().get(tgUserId);
     }
 
     @Override
     public List<Volunteer> getVolunteers() {
-        checkIfCacheIsObsoletedAndUpdateIfNeeded();
-        return new LinkedList<>(contacts.values());
+        checkCacheInBackgroundIfNeeded();
+        return new LinkedList<>(snapshot.getContacts().values());
     }
 
     @Override
     public List<String> getMainRoles() {
-        return mainRoles;
+        awaitReadiness();
+        return snapshot.getMainRoles();
     }
 
     @Override
     public List<Participation> getParticipantsByDate(LocalDate date) {
-        checkIfCacheIsObsoletedAndUpdateIfNeeded();
-        if (Objects.isNull(events.get(date))) addNewEvent(date);
-        return events.get(date).getParticipants();
+        checkCacheInBackgroundIfNeeded();
+        return getEvent(date).getParticipants();
     }
 
     @Override
     public List<String> getOrganizers() {
-        checkIfCacheIsObsoletedAndUpdateIfNeeded();
+        checkCacheInBackgroundIfNeeded();
         return null;
     }
 
+    @Override
+    public Participation getParticipation(LocalDate date, int sheetRowNumber) {
+        checkCacheInBackgroundIfNeeded();
+        return getEvent(date).getSlot(sheetRowNumber);
+    }
+
     @Override
     public List<Participation> getAvailableParticipationByDate(LocalDate date) {
-        checkIfCacheIsObsoletedAndUpdateIfNeeded();
-        if (Objects.isNull(events.get(date))) addNewEvent(date);
-        return events.get(date).getParticipants()
-                .stream()
-                .filter(participation -> Objects.isNull(participation.getVolunteer()))
-                .collect(Collectors.toCollection(LinkedList::new));
+        checkCacheInBackgroundIfNeeded();
+        return getEvent(date).getVacantSlots();
+    }
+
+    @Override
+    public List<Participation> getAvailableMainParticipationByDate(LocalDate date) {
+        checkCacheInBackgroundIfNeeded();
+        return getEvent(date).getMainVacantSlots();
+    }
+
+    @Override
+    public List<Participation> getAvailableOtherParticipationByDate(LocalDate date) {
+        checkCacheInBackgroundIfNeeded();
+        return getEvent(date).getOtherVacantSlots();
+    }
+
+    @Override
+    public Vacancies getVacanciesByDate(LocalDate date) {
+        checkCacheInBackgroundIfNeeded();
+        return getEvent(date).getVacancies();
+    }
+
+    @Override
+    public List<Participation> getOccupiedParticipationByDate(LocalDate date) {
+        checkCacheInBackgroundIfNeeded();
+        return getEvent(date).getOccupiedSlots();
+    }
+
+    @Override
+    public List<Event> getUpcomingEvents(LocalDate from, int limit) {
+        checkCacheInBackgroundIfNeeded();
+        return snapshot.getEvents().tailMap(from, true).values().stream().limit(limit).toList();
+    }
+
+    @Override
+    public List<Event> getEventsBetween(LocalDate from, LocalDate to) {
+        checkCacheInBackgroundIfNeeded();
+        if (from.isAfter(to)) return List.of();
+        // даты до окна загрузки подгружаем из таблицы одним запросом
+        var eventDates = snapshot.getEventColumns().subMap(from, true, to, true).keySet();
+        if (!snapshot.getEvents().keySet().containsAll(eventDates)) loadEventColumns(eventDates);
+        return List.copyOf(snapshot.getEvents().subMap(from, true, to, true).values());
+    }
+
+    @Override
+    public Event getLastEvent() {
+        checkCacheInBackgroundIfNeeded();
+        var lastEvent = snapshot.getEvents().lastEntry();
+        return Objects.nonNull(lastEvent) ? lastEvent.getValue() : null;
     }
 
     @Override
     public Participation saveParticipation(Participation participation) {
-        if (checkIfCacheIsObsoletedAndUpdateIfNeeded()) return null;
-        var event = events.get(participation.getEventDate());
+        awaitWritability();
+        checkCacheInBackgroundIfNeeded();
+        // колонку события вне окна загрузки читаем до блокировки
+        findEvent(participation.getEventDate());
+        synchronized (this) {
+            var event = snapshot.getEvents().get(participation.getEventDate());
+            if (Objects.isNull(event) || Objects.isNull(event.getSlot(participation.getSheetRowNumber()))) return null;
+
+            if (!writeParticipation(event, participation)) return null;
+
+            snapshot = snapshot.withEvent(event.withVolunteer(participation.getSheetRowNumber(), participation.getVolunteer()));
+            cacheLastUpdateTime = LocalDateTime.now();
+        }
+        return participation;
+    }
+
+    @Override
+    public Participation reserveParticipation(Participation participation) {
+        awaitWritability();
+        checkCacheInBackgroundIfNeeded();
+        var eventDate = participation.getEventDate();
+        var sheetRowNumber = participation.getSheetRowNumber();
+        var volunteer = participation.getVolunteer();
+        // колонку события вне окна загрузки читаем до блокировки, compareAndSetVolunteer в таблицу не ходит
+        findEvent(eventDate);
+        // занимаем позицию в кэше; проигравший получает отказ сразу, не дожидаясь таблицы
+        var event = compareAndSetVolunteer(eventDate, sheetRowNumber, null, volunteer);
         if (Objects.isNull(event)) return null;
 
-        var cellAddress = getCellAddress(participation.getSheetRowNumber(), event.getColumnNumber());
+        // запись в таблицу идет вне блокировки - остальные записи на другие позиции ее не ждут
+        boolean isWritten = false;
+        try {
+            isWritten = writeParticipation(event, participation);
+        } finally {
+            // запись не удалась - освобождаем позицию, если ее за это время никто не переписал
+            if (!isWritten) compareAndSetVolunteer(eventDate, sheetRowNumber, volunteer, null);
+        }
+        if (!isWritten) return null;
+        synchronized (this) {
+            // пока запись шла в таблицу, кэш могли перечитать без нее - занимаем позицию снова; если ее за это время
+            // занял другой, его запись в ту же ячейку сделана позже нашей и победит - возвращаем отказ
+            var currentEvent = snapshot.getEvents().get(eventDate);
+            if (Objects.isNull(currentEvent)) return null;
+            var roleIndex = currentEvent.getRoster().getRoleIndex(sheetRowNumber);
+            if (roleIndex < 0) return null;
+            if (currentEvent.getVolunteerAt(roleIndex) != volunteer && Objects.isNull(compareAndSetVolunteer(eventDate, sheetRowNumber, null, volunteer)))
+                return null;
+            cacheLastUpdateTime = LocalDateTime.now();
+        }
+        return participation;
+    }
 
-        if (!storageUtils.writeCellValue(
+    // записывает волонтера на позицию в кэше, только если сейчас на ней записан expectedVolunteer (тот же объект);
+    // возвращает обновленное событие или null, если события нет в снимке, позиции нет или она уже занята другим
+    protected synchronized Event compareAndSetVolunteer(LocalDate eventDate, int sheetRowNumber, Volunteer expectedVolunteer, Volunteer volunteer) {
+        var event = snapshot.getEvents().get(eventDate);
+        if (Objects.isNull(event)) return null;
+        var roleIndex = event.getRoster().getRoleIndex(sheetRowNumber);
+        if (roleIndex < 0 || event.getVolunteerAt(roleIndex) != expectedVolunteer) return null;
+        var updatedEvent = event.withVolunteer(sheetRowNumber, volunteer);
+        snapshot = snapshot.withEvent(updatedEvent);
+        return updatedEvent;
+    }
+
+    protected boolean writeParticipation(Event event, Participation participation) {
+        var cellAddress = getCellAddress(participation.getSheetRowNumber(), event.getColumnNumber());
+        return storageUtils.writeCellValue(
                 BotConfiguration.getSheetVolunteers(),
                 cellAddress,
                 Optional.ofNullable(participation.getVolunteer())
                         .orElse(Volunteer.builder().build())
-                        .getFullName())) return null;
+                        .getFullName());
+    }
 
-        var participant = event.getParticipants()
-                .stream()
-                .filter(obj -> obj.getSheetRowNumber() == participation.getSheetRowNumber())
-                .findFirst();
+    @Override
+    public void deleteParticipation(Participation participation) {
+        awaitWritability();
+        checkCacheInBackgroundIfNeeded();
+        // колонку события вне окна загрузки читаем до блокировки
+        findEvent(participation.getEventDate());
+        synchronized (this) {
+            var event = snapshot.getEvents().get(participation.getEventDate());
+            if (Objects.isNull(event)) return;
+            var cellAddress = getCellAddress(participation.getSheetRowNumber(), event.getColumnNumber());
+            if (storageUtils.writeCellValue(BotConfiguration.getSheetContacts(), cellAddress, participation.getVolunteer().getTgUserName())) {
+                var updatedEvent = event.withVolunteer(participation.getSheetRowNumber(), null);
+                assert updatedEvent != null;
+                snapshot = snapshot.withEvent(updatedEvent);
+                cacheLastUpdateTime = LocalDateTime.now();
+            }
+        }
+    }
 
-        if (participant.isEmpty()) return null;
-        else participant.get().setVolunteer(participation.getVolunteer());
+    synchronized public void loadDataFromStorage() {
+        // все нужные диапазоны читаем одним запросом, кроме матрицы волонтеров:
+        // окно ее колонок считается по строке дат, поэтому она читается вторым запросом
+        List<SheetRange> ranges = new ArrayList<>(getStorageRanges());
+        // время изменения таблицы берем до чтения: все, что изменится позже, файл быстрого старта не содержит
+        var sheetLastUpdateTime = storageUtils.getSheetLastUpdateTime();
+        List<List<List<String>>> storageRanges = new ArrayList<>(storageUtils.readValuesRanges(ranges));
+        var eventVolunteersRange = getEventVolunteersRange(storageRanges.get(2), storageRanges.get(3));
+        ranges.add(eventVolunteersRange);
+        storageRanges.add(storageUtils.readValuesRanges(List.of(eventVolunteersRange)).get(0));
+        applyStorageRanges(ranges, storageRanges);
         cacheLastUpdateTime = LocalDateTime.now();
+        sheetLastCheckTimeMillis = System.currentTimeMillis();
+        if (Objects.nonNull(warmStartFile)) warmStartFile.save(sheetLastUpdateTime, ranges, storageRanges);
+        readiness.complete(null);
+        writability.complete(null);
 
-        return participation;
+        startStorageSync();
+    }
+
+    // загрузка кэша в отдельном потоке: приложение и бот стартуют, не дожидаясь таблицы
+    public CompletableFuture<Void> startAsync() {
+        storageUtils.setFailedWriteListener(this::onFailedWrite);
+        new Thread(() -> {
+            try {
+                startFromWarmSnapshot();
+            } catch (RuntimeException e) {
+                log.error("Error loading storage", e);
+                readiness.completeExceptionally(e);
+            }
+        }, "storage-startup").start();
+        readiness.whenComplete((result, e) -> {
+            if (Objects.nonNull(e)) writability.completeExceptionally(e);
+        });
+        return readiness;
+    }
+
+    // подтвержденная запись не дошла до таблицы (отложенная запись). Вызывается из потока сброса очереди,
+    // поэтому кэш правится в отдельном потоке: позиция, занятая потерянной записью, освобождается, если на ней
+    // все еще тот же волонтер; другие потерянные записи кэш перечитывает из таблицы (очередь при чтении накладывается)
+    protected void onFailedWrite(FailedWrite failedWrite) {
+        new Thread(() -> {
+            try {
+                if (releaseLostParticipation(failedWrite)) return;
+                log.error("Write to {}!{} is lost, reloading cache from sheet", failedWrite.sheetName(), failedWrite.range());
+                loadDataFromStorage();
+            } catch (RuntimeException e) {
+                log.error("Error rolling back lost write to {}!{}", failedWrite.sheetName(), failedWrite.range(), e);
+            }
+        }, "storage-rollback").start();
+    }
+
+    // false - потерянная запись не запись волонтера на позицию события
+    private boolean releaseLostParticipation(FailedWrite failedWrite) {
+        if (!BotConfiguration.getSheetVolunteers().equals(failedWrite.sheetName()) || failedWrite.values().size() != 1 || failedWrite.values().get(0).size() != 1)
+            return false;
+        var lostFullName = String.valueOf(failedWrite.values().get(0).get(0));
+        // потеряно освобождение позиции - в таблице остался прежний волонтер, кэш нужно перечитать
+        if (lostFullName.isEmpty()) return false;
+        var cell = failedWrite.range().getBegin();
+        var event = snapshot.getEvents().values().stream()
+                .filter(loadedEvent -> loadedEvent.getColumnNumber() == cell.getColumn())
+                .findFirst()
+                .orElse(null);
+        if (Objects.isNull(event) || event.getRoster().getRoleIndex(cell.getRow()) < 0) return false;
+        var volunteer = event.getVolunteerAt(event.getRoster().getRoleIndex(cell.getRow()));
+        // позицию уже освободили или переписали - более поздняя запись в ту же ячейку стоит в очереди за потерянной
+        if (Objects.isNull(volunteer) || !lostFullName.equals(volunteer.getFullName())) return true;
+        if (Objects.nonNull(compareAndSetVolunteer(event.getEventDate(), cell.getRow(), volunteer, null)))
+            log.error("Write of {} to {}!{} is lost, the slot is released", lostFullName, failedWrite.sheetName(), failedWrite.range());
+        return true;
     }
 
     @Override
-    public void deleteParticipation(Participation participation) {
-        checkIfCacheIsObsoletedAndUpdateIfNeeded();
-        var cellAddress = getCellAddress(participation.getSheetRowNumber(), events.get(participation.getEventDate()).getColumnNumber());
-        if (storageUtils.writeCellValue(BotConfiguration.getSheetContacts(), cellAddress, participation.getVolunteer().getTgUserName())) {
-            var participant = events.get(participation.getEventDate()).getParticipants()
-                    .stream()
-                    .filter(obj -> obj.getSheetRowNumber() == participation.getSheetRowNumber())
-                    .findFirst()
-                    .orElse(null);
-            assert participant != null;
-            participant.setVolunteer(null);
-            cacheLastUpdateTime = LocalDateTime.now();
+    public CompletableFuture<Void> getReadiness() {
+        return readiness;
+    }
+
+    @Override
+    public Map<String, Object> getCacheDetails() {
+        var currentSnapshot = snapshot;
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("cacheLastUpdateTime", String.valueOf(cacheLastUpdateTime));
+        details.put("contacts", currentSnapshot.getContacts().size());
+        details.put("events", currentSnapshot.getEvents().size());
+        details.put("sheetLastCheckMilliSecAgo", System.currentTimeMillis() - sheetLastCheckTimeMillis);
+        return details;
+    }
+
+    // быстрый старт: кэш собирается из файла последней загрузки, а таблица проверяется на изменения в фоне;
+    // если файла нет или он не подходит - обычная загрузка из таблицы
+    synchronized public void startFromWarmSnapshot() {
+        var storageRanges = getStorageRanges();
+        var warmStart = Objects.isNull(warmStartFile) ? null : warmStartFile.load(storageRanges);
+        // за запрошенными диапазонами в файле должно идти окно матрицы волонтеров, на каждый диапазон - значения
+        if (Objects.nonNull(warmStart) && (warmStart.getRanges().size() != storageRanges.size() + 1 || warmStart.getValues().size() != warmStart.getRanges().size()))
+            warmStart = null;
+        if (Objects.isNull(warmStart) || !applyWarmSnapshot(warmStart)) {
+            loadDataFromStorage();
+            return;
         }
+        cacheLastUpdateTime = warmStart.getSheetLastUpdateTime();
+        // читатели не проверяют таблицу сами, пока идет фоновая проверка
+        sheetLastCheckTimeMillis = System.currentTimeMillis();
+        log.info("Storage is started from warm snapshot, cache is actual for {}", cacheLastUpdateTime);
+        readiness.complete(null);
+        new Thread(this::revalidateWarmSnapshot, "storage-revalidate").start();
+
+        startStorageSync();
     }
 
-    synchronized public void loadDataFromStorage() {
-        loadContacts();
-        loadEvents();
-        loadMainRoles();
-        cacheLastUpdateTime = LocalDateTime.now();
+    // собирает кэш из файла без обращения к таблице; false - файл не подошел
+    private boolean applyWarmSnapshot(WarmStartSnapshotFile.Content warmStart) {
+        isApplyingWarmSnapshot = true;
+        try {
+            applyStorageRanges(warmStart.getRanges().stream().map(SheetRange::parse).toList(), warmStart.getValues());
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Error applying warm start snapshot, loading from sheet", e);
+            return false;
+        } finally {
+            isApplyingWarmSnapshot = false;
+        }
+    }
+
+    // сверяет кэш из файла с таблицей; отложенные изменения таблицы делает полная загрузка. До конца сверки записи ждут
+    private void revalidateWarmSnapshot() {
+        try {
+            if (!updateCacheIfSheetChanged() && isSheetUpdateDeferred) loadDataFromStorage();
+            writability.complete(null);
+        } catch (RuntimeException e) {
+            log.error("Error revalidating warm snapshot", e);
+            try {
+                loadDataFromStorage();
+            } catch (RuntimeException loadException) {
+                log.error("Error loading storage after warm start", loadException);
+                writability.completeExceptionally(loadException);
+            }
+        }
+    }
+
+    private void awaitReadiness() {
+        try {
+            readiness.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Storage is not ready", e.getCause());
+        }
+    }
+
+    private void awaitWritability() {
+        try {
+            writability.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Storage is not writable", e.getCause());
+        }
+    }
+
+    // диапазоны первого запроса; окно матрицы волонтеров (getEventVolunteersRange) добавляется к ним пятым
+    protected List<SheetRange> getStorageRanges() {
+        return List.of(
+                getContactsRange(),
+                getMainRolesRange(),
+                getEventDatesRange(),
+                getEventRolesRange());
+    }
+
+    // собирает новый снимок из прочитанных диапазонов и публикует его
+    protected void applyStorageRanges(List<SheetRange> ranges, List<List<List<String>>> storageRanges) {
+        // новый снимок собирается в стороне от текущего, читатели до публикации продолжают работать со старым
+        var previousSnapshot = snapshot;
+        var loadedSnapshot = loadContacts(previousSnapshot, storageRanges.get(0));
+        loadedSnapshot = loadMainRoles(loadedSnapshot, storageRanges.get(1));
+        loadedSnapshot = loadEvents(loadedSnapshot, previousSnapshot, storageRanges.get(2), storageRanges.get(3), ranges.get(4), storageRanges.get(4));
+        snapshot = loadedSnapshot;
+    }
 
+    private void startStorageSync() {
         if (!isStorageSyncStarted && BotConfiguration.getBotStorageSheetSyncIntervalMilliSec() != 0) {
             new Thread(new SyncStorageRunner()).start();
             isStorageSyncStarted = true;
         }
     }
 
-    private boolean checkIfCacheIsObsoletedAndUpdateIfNeeded() {
-        if (BotConfiguration.getBotStorageSheetSyncIntervalMilliSec() == 0) return false;
+    // обращения всегда обслуживаются из текущего снимка, в таблицу они не ходят; если фоновая проверка давно
+    // не выполнялась (окно свежести прошло), запускаем одну проверку в отдельном потоке и не ждем ее
+    private void checkCacheInBackgroundIfNeeded() {
+        // до первой загрузки снимок пуст - обращения к хранилищу ждут ее
+        awaitReadiness();
+        if (BotConfiguration.getBotStorageSheetSyncIntervalMilliSec() == 0) return;
+        if (System.currentTimeMillis() - sheetLastCheckTimeMillis < BotConfiguration.getBotStorageCacheFreshnessMilliSec()) return;
+        if (!isSheetCheckRunning.compareAndSet(false, true)) return;
+        var thread = new Thread(() -> {
+            try {
+                updateCacheIfSheetChanged();
+            } catch (RuntimeException e) {
+                log.error("Error checking sheet for changes", e);
+            } finally {
+                isSheetCheckRunning.set(false);
+            }
+        }, "storage-check");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private boolean updateCacheIfSheetChanged() {
         //log.info("checking cache..");
+        sheetLastCheckTimeMillis = System.currentTimeMillis();
         var sheetLastUpdateTime = storageUtils.getSheetLastUpdateTime();
         if (cacheLastUpdateTime.isBefore(sheetLastUpdateTime)) {
             log.info("cacheLastUpdateTime {}: ", cacheLastUpdateTime);
@@ -159,73 +493,237 @@ public abstract class Storage implements TelegramBotStorage {
         return false;
     }
 
-    protected void loadContacts() {
-        log.info("loadContacts is started");
-        contacts = new HashMap<>();
+    // событие из текущего снимка; если события на дату еще нет - добавляет его
+    protected Event getEvent(LocalDate date) {
+        var event = findEvent(date);
+        return Objects.nonNull(event) ? event : addNewEvent(date);
+    }
+
+    // событие из текущего снимка; дата из строки дат, не попавшая в окно загрузки, подгружается из таблицы; иначе null
+    protected Event findEvent(LocalDate date) {
+        var event = snapshot.getEvents().get(date);
+        if (Objects.nonNull(event) || !snapshot.getEventColumns().containsKey(date)) return event;
+        loadEventColumns(List.of(date));
+        return snapshot.getEvents().get(date);
+    }
+
+    // читает колонки событий вне окна загрузки одним запросом и добавляет события в снимок;
+    // чтение идет без блокировки, под блокировкой события только собираются и публикуются
+    protected void loadEventColumns(Collection<LocalDate> eventDates) {
+        var loadedSnapshot = snapshot;
+        List<LocalDate> missingDates = eventDates.stream()
+                .filter(eventDate -> !loadedSnapshot.getEvents().containsKey(eventDate) && loadedSnapshot.getEventColumns().containsKey(eventDate))
+                .toList();
+        if (missingDates.isEmpty()) return;
+        log.info("loadEventColumns: {}", missingDates);
+        var eventRoles = loadedSnapshot.getEventRoles();
+        var columnsValues = storageUtils.readValuesRanges(missingDates.stream()
+                .map(eventDate -> loadedSnapshot.getEventColumns().get(eventDate))
+                .map(columnNumber -> getEventVolunteersRange(eventRoles.size(), columnNumber, columnNumber))
+                .toList());
+        synchronized (this) {
+            // пока читали, снимок могли перезагрузить или подгрузить те же события - берем только то, что еще актуально
+            var currentSnapshot = snapshot;
+            if (!currentSnapshot.getEventRoles().equals(eventRoles)) return;
+            NavigableMap<LocalDate, Event> newEvents = new TreeMap<>(currentSnapshot.getEvents());
+            for (int dateIndex = 0; dateIndex < missingDates.size(); dateIndex++) {
+                var eventDate = missingDates.get(dateIndex);
+                var columnNumber = loadedSnapshot.getEventColumns().get(eventDate);
+                if (newEvents.containsKey(eventDate) || !columnNumber.equals(currentSnapshot.getEventColumns().get(eventDate))) continue;
+                var eventVolunteers = getEventVolunteers(columnsValues.get(dateIndex), eventRoles, 1);
+                currentSnapshot = markOrganizers(currentSnapshot, eventRoles, eventVolunteers);
+                newEvents.put(eventDate, prepareEvent(currentSnapshot, currentSnapshot.getRoster(), eventDate, columnNumber, 0, eventVolunteers));
+            }
+            snapshot = currentSnapshot.toBuilder().events(Collections.unmodifiableNavigableMap(newEvents)).build();
+        }
+    }
+
+    protected SheetRange getContactsRange() {
         var rangeBegin = getCellAddress(BotConfiguration.getSheetContactsRowStart(), BotConfiguration.getSheetContactsColumnFirst());
         var rangeEnd = getCellAddress(null, BotConfiguration.getSheetContactsColumnLast());
-        AtomicInteger sheetContactsRowStart = new AtomicInteger(BotConfiguration.getSheetContactsRowStart());
-        storageUtils.readValuesRange(BotConfiguration.getSheetContacts(), rangeBegin, rangeEnd)
-                .forEach(volunteerProperty -> {
-                    var volunteer = Volunteer.createFrom(volunteerProperty, aesUtil);
-                    volunteer.setSheetRowNumber(sheetContactsRowStart.getAndIncrement());
-                    contacts.put(volunteer.getFullName(), volunteer);
-                });
-        log.info("loadContacts is finished");
+        return SheetRange.of(BotConfiguration.getSheetContacts(), rangeBegin, rangeEnd);
+    }
+
+    protected SheetRange getMainRolesRange() {
+        return SheetRange.of(BotConfiguration.getSheetRoles(), CellRef.of(1, 1), CellRef.column(1));
+    }
+
+    // строка дат листа "Волонтеры" целиком - она короткая, нужна для расчета окна и подгрузки старых дат
+    protected SheetRange getEventDatesRange() {
+        var eventRow = CellRef.row(BotConfiguration.getSheetVolunteersEventRow());
+        return SheetRange.of(BotConfiguration.getSheetVolunteers(), eventRow, eventRow);
+    }
+
+    protected SheetRange getEventRolesRange() {
+        var rangeBegin = getCellAddress(BotConfiguration.getSheetVolunteersRoleRowStart(), BotConfiguration.getSheetVolunteersRoleColumn());
+        var rangeEnd = getCellAddress(null, BotConfiguration.getSheetVolunteersRoleColumn());
+        return SheetRange.of(BotConfiguration.getSheetVolunteers(), rangeBegin, rangeEnd);
+    }
+
+    // окно матрицы роль x дата: прошедшие даты не старше sheet.saturdays.behind недель и все следующие за ними
+    protected SheetRange getEventVolunteersRange(List<List<String>> eventDatesValues, List<List<String>> eventRolesValues) {
+        var eventDates = getEventDates(eventDatesValues);
+        var firstColumnNumber = BotConfiguration.getSheetVolunteersEventColumnStart() + getEventWindowFirstIndex(eventDates);
+        var lastColumnNumber = Math.max(BotConfiguration.getSheetVolunteersEventColumnStart() + eventDates.size() - 1, firstColumnNumber);
+        return getEventVolunteersRange(getEventRoles(eventRolesValues).size(), firstColumnNumber, lastColumnNumber);
     }
 
-    protected void loadEvents() {
+    protected SheetRange getEventVolunteersRange(int eventRolesCount, int firstColumnNumber, int lastColumnNumber) {
+        var firstRowNumber = BotConfiguration.getSheetVolunteersRoleRowStart();
+        return SheetRange.of(BotConfiguration.getSheetVolunteers(),
+                getCellAddress(firstRowNumber, firstColumnNumber),
+                getCellAddress(firstRowNumber + Math.max(eventRolesCount, 1) - 1, lastColumnNumber));
+    }
+
+    // индекс первой даты окна загрузки; даты в строке идут по возрастанию
+    protected int getEventWindowFirstIndex(List<LocalDate> eventDates) {
+        if (BotConfiguration.getSheetSaturdaysBehind() < 0) return 0;
+        var windowStart = LocalDate.now().minusWeeks(BotConfiguration.getSheetSaturdaysBehind());
+        var dateIndex = 0;
+        for (LocalDate eventDate : eventDates) {
+            if (!eventDate.isBefore(windowStart)) break;
+            dateIndex++;
+        }
+        return dateIndex;
+    }
+
+    protected StorageSnapshot loadContacts(StorageSnapshot previousSnapshot, List<List<String>> contactsValues) {
+        log.info("loadContacts is started");
+        Map<String, Volunteer> loadedContacts = new HashMap<>();
+        Map<String, Volunteer> loadedByTgUserName = new HashMap<>();
+        Map<String, Volunteer> loadedByCode = new HashMap<>();
+        Map<Long, Volunteer> loadedByTgUserId = new HashMap<>();
+        var rows = contactsValues instanceof RandomAccess ? contactsValues : new ArrayList<>(contactsValues);
+        int[] rowHashes = new int[rows.size()];
+        boolean[] decodedRows = new boolean[rows.size()];
+        // строки разбираются независимо друг от друга (расшифровка id - чистая работа CPU),
+        // поэтому декодируем параллельно; номер строки таблицы считается из индекса
+        List<Volunteer> rowVolunteers = IntStream.range(0, rows.size())
+                .parallel()
+                .mapToObj(rowIndex -> {
+                    var volunteerProperty = rows.get(rowIndex);
+                    rowHashes[rowIndex] = volunteerProperty.hashCode();
+                    var volunteer = getUnchangedContact(previousSnapshot, rowIndex, volunteerProperty, rowHashes[rowIndex]);
+                    if (Objects.isNull(volunteer)) {
+                        volunteer = Volunteer.createFrom(volunteerProperty, aesUtil);
+                        volunteer.setSheetRowNumber(BotConfiguration.getSheetContactsRowStart() + rowIndex);
+                        decodedRows[rowIndex] = true;
+                    }
+                    return volunteer;
+                })
+                .toList();
+        // сливаем в порядке строк - при дублях ФИО остается последняя строка, как и раньше
+        rowVolunteers.forEach(volunteer -> loadedContacts.put(volunteer.getFullName(), volunteer));
+        int changedRows = 0;
+        for (boolean isDecoded : decodedRows) if (isDecoded) changedRows++;
+        // индексы строим по итоговой мапе, чтобы при дублях ФИО индекс указывал на того же волонтера, что и contacts
+        loadedContacts.values().forEach(volunteer -> StorageSnapshot.indexVolunteer(volunteer, loadedByTgUserName, loadedByCode, loadedByTgUserId));
+        log.info("loadContacts is finished: {} rows, {} changed", rowVolunteers.size(), changedRows);
+        return previousSnapshot.toBuilder()
+                .contacts(Collections.unmodifiableMap(loadedContacts))
+                .contactsByTgUserName(Collections.unmodifiableMap(loadedByTgUserName))
+                .contactsByCode(Collections.unmodifiableMap(loadedByCode))
+                .contactsByTgUserId(Collections.unmodifiableMap(loadedByTgUserId))
+                .contactsRows(Collections.unmodifiableList(rows))
+                .contactsRowHashes(rowHashes)
+                .contactsRowVolunteers(Collections.unmodifiableList(rowVolunteers))
+                .build();
+    }
+
+    // волонтер из прошлой загрузки, если строка с тем же номером не изменилась; иначе null
+    protected Volunteer getUnchangedContact(StorageSnapshot previousSnapshot, int rowIndex, List<String> volunteerProperty, int rowHash) {
+        if (rowIndex >= previousSnapshot.getContactsRows().size() || previousSnapshot.getContactsRowHashes()[rowIndex] != rowHash) return null;
+        if (!previousSnapshot.getContactsRows().get(rowIndex).equals(volunteerProperty)) return null;
+        return previousSnapshot.getContactsRowVolunteers().get(rowIndex);
+    }
+
+    protected StorageSnapshot loadEvents(StorageSnapshot loadedSnapshot, StorageSnapshot previousSnapshot,
+                                         List<List<String>> eventDatesValues, List<List<String>> eventRolesValues,
+                                         SheetRange eventVolunteersRange, List<List<String>> eventVolunteersValues) {
         log.info("loadEvents is started");
-        events = new LinkedHashMap<>();
-        var eventRoles = getEventRoles();
-        var eventDates = getEventDates();
+        var eventRoles = getEventRoles(eventRolesValues);
+        var eventDates = getEventDates(eventDatesValues);
         addSaturdaysIfNeeded(eventDates);
-        var eventVolunteers = getEventVolunteers(eventRoles, eventDates);
-        prepareEvents(eventRoles, eventDates, eventVolunteers);
+        // в events попадают даты начиная с первой колонки прочитанного окна, более ранние подгружаются по запросу
+        var firstDateIndex = Math.max(0, Math.min(eventVolunteersRange.getRangeBegin().getColumn() - BotConfiguration.getSheetVolunteersEventColumnStart(), eventDates.size()));
+        var eventVolunteers = getEventVolunteers(eventVolunteersValues, eventRoles, eventDates.size() - firstDateIndex);
+        loadedSnapshot = markOrganizers(loadedSnapshot, eventRoles, eventVolunteers);
+        // если состав ролей не менялся, пересобираем только события, в ячейках которых что-то поменялось
+        var previousEvents = eventRoles.equals(previousSnapshot.getEventRoles()) && loadedSnapshot.getMainRolesSet().equals(previousSnapshot.getMainRolesSet())
+                ? previousSnapshot.getEvents()
+                : Collections.<LocalDate, Event>emptyMap();
+        // роли и волонтеры с номерами - одни на все события загрузки
+        var roster = Roster.of(BotConfiguration.getSheetVolunteersRoleRowStart(), eventRoles, loadedSnapshot.getMainRolesSet(), loadedSnapshot.getContacts().values());
+        var events = prepareEvents(loadedSnapshot, roster, eventDates, firstDateIndex, eventVolunteers, previousEvents);
         log.info("loadEvents is finished");
+        return loadedSnapshot.toBuilder()
+                .events(Collections.unmodifiableNavigableMap(events))
+                .eventRoles(Collections.unmodifiableList(eventRoles))
+                .roster(roster)
+                .eventColumns(Collections.unmodifiableNavigableMap(getEventColumns(eventDates)))
+                .build();
     }
 
-    protected void loadMainRoles() {
+    protected StorageSnapshot loadMainRoles(StorageSnapshot loadedSnapshot, List<List<String>> mainRolesValues) {
         log.info("loadMainRoles is started");
-        mainRoles = storageUtils.readValuesList(BotConfiguration.getSheetRoles(), "R1C1", "C1");
+        List<String> mainRoles = mainRolesValues.stream()
+                .map(values -> !values.isEmpty() ? values.get(0) : "")
+                .collect(Collectors.toCollection(LinkedList::new));
         log.info("loadMainRoles is finished");
+        return loadedSnapshot.toBuilder()
+                .mainRoles(Collections.unmodifiableList(mainRoles))
+                .mainRolesSet(Collections.unmodifiableSet(new HashSet<>(mainRoles)))
+                .build();
     }
 
-    protected void addNewEvent(LocalDate newEventDate) {
-        var lastEvent = events.get(events.keySet().stream().max(LocalDate::compareTo).orElse(null));
+    protected synchronized Event addNewEvent(LocalDate newEventDate) {
+        var events = snapshot.getEvents();
+        // событие могли добавить, пока ждали блокировку
+        if (events.containsKey(newEventDate)) return events.get(newEventDate);
+        if (events.isEmpty()) throw new IllegalStateException("No events to take roles from for " + newEventDate);
+        var lastEvent = events.lastEntry().getValue();
         var newEventColumnNumber = lastEvent.getColumnNumber() + 1;
-        var newEventParticipants = lastEvent.getParticipants().stream()
-                .map(lastParticipation -> Participation.builder()
-                        .volunteer(null)
-                        .eventDate(newEventDate)
-                        .eventRole(lastParticipation.getEventRole())
-                        .sheetRowNumber(lastParticipation.getSheetRowNumber()).build())
-                .toList();
+        // те же роли, что у последнего события, все позиции свободны
         var newEvent = Event.builder()
                 .eventDate(newEventDate)
                 .columnNumber(newEventColumnNumber)
-                .participants(newEventParticipants).build();
-        events.put(newEventDate, newEvent);
+                .roster(lastEvent.getRoster()).build();
+        snapshot = snapshot.withEvent(newEvent);
         var cellAddress = getCellAddress(BotConfiguration.getSheetVolunteersEventRow(), newEventColumnNumber);
         storageUtils.writeCellValue(BotConfiguration.getSheetVolunteers(), cellAddress, newEventDate.format(BotConfiguration.DATE_FORMATTER));
+        return newEvent;
     }
 
-    protected List<String> getEventRoles() {
-        var rangeBegin = getCellAddress(BotConfiguration.getSheetVolunteersRoleRowStart(), BotConfiguration.getSheetVolunteersRoleColumn());
-        var rangeEnd = getCellAddress(null, BotConfiguration.getSheetVolunteersRoleColumn());
-        return storageUtils.readValuesList(BotConfiguration.getSheetVolunteers(), rangeBegin, rangeEnd);
+    // eventRolesValues - колонка ролей начиная со строки первой роли (getEventRolesRange)
+    protected List<String> getEventRoles(List<List<String>> eventRolesValues) {
+        List<String> eventRoles = new LinkedList<>();
+        for (int rowIndex = 0; rowIndex < eventRolesValues.size(); rowIndex++)
+            eventRoles.add(getSheetValue(eventRolesValues, rowIndex, 0));
+        // как и при чтении колонки, список ролей заканчивается последней непустой ячейкой
+        while (!eventRoles.isEmpty() && eventRoles.get(eventRoles.size() - 1).isEmpty())
+            eventRoles.remove(eventRoles.size() - 1);
+        return eventRoles;
     }
 
-    protected List<LocalDate> getEventDates() {
-        var rangeBegin = getCellAddress(BotConfiguration.getSheetVolunteersEventRow(), BotConfiguration.getSheetVolunteersEventColumnStart());
-        var rangeEnd = getCellAddress(BotConfiguration.getSheetVolunteersEventRow(), null);
-        return storageUtils.readValuesRange(BotConfiguration.getSheetVolunteers(), rangeBegin, rangeEnd)
-                .get(0)
+    // eventDatesValues - строка дат целиком (getEventDatesRange)
+    protected List<LocalDate> getEventDates(List<List<String>> eventDatesValues) {
+        var eventRow = !eventDatesValues.isEmpty() ? eventDatesValues.get(0) : List.<String>of();
+        var lastDateIndex = eventRow.size() - 1;
+        while (lastDateIndex >= 0 && eventRow.get(lastDateIndex).isEmpty()) lastDateIndex--;
+        return eventRow.subList(Math.min(BotConfiguration.getSheetVolunteersEventColumnStart() - 1, lastDateIndex + 1), lastDateIndex + 1)
                 .stream()
                 .map(eventDateString -> LocalDate.parse(eventDateString, BotConfiguration.DATE_FORMATTER))
                 .collect(Collectors.toCollection(LinkedList::new));
     }
 
+    // номер колонки для каждой даты строки дат
+    protected NavigableMap<LocalDate, Integer> getEventColumns(List<LocalDate> eventDates) {
+        NavigableMap<LocalDate, Integer> eventColumns = new TreeMap<>();
+        var columnNumber = BotConfiguration.getSheetVolunteersEventColumnStart();
+        for (LocalDate eventDate : eventDates) eventColumns.put(eventDate, columnNumber++);
+        return eventColumns;
+    }
+
     protected void addSaturdaysIfNeeded(List<LocalDate> eventDates) {
         var nextSaturdaysCounter = 0;
         var saturdayColumn = BotConfiguration.getSheetVolunteersEventColumnStart();
@@ -238,6 +736,10 @@ public abstract class Storage implements TelegramBotStorage {
 
         assert lastSaturday != null;
         while (nextSaturdaysCounter < BotConfiguration.getSheetSaturdaysAhead()) {
+            if (isApplyingWarmSnapshot) {
+                isSheetUpdateDeferred = true;
+                break;
+            }
             lastSaturday = lastSaturday.with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
             var cellAddress = getCellAddress(BotConfiguration.getSheetVolunteersEventRow(), saturdayColumn++);
             storageUtils.writeCellValue(BotConfiguration.getSheetVolunteers(), cellAddress, lastSaturday.format(BotConfiguration.DATE_FORMATTER));
@@ -246,59 +748,111 @@ public abstract class Storage implements TelegramBotStorage {
         }
     }
 
-    protected List<List<String>> getEventVolunteers(List<String> eventRoles, List<LocalDate> eventDates) {
-        var rangeBegin = getCellAddress(BotConfiguration.getSheetVolunteersRoleRowStart(), BotConfiguration.getSheetVolunteersRoleColumn() + 1);
-        var rangeEnd = getCellAddress(BotConfiguration.getSheetVolunteersRoleRowStart() + eventRoles.size() - 1, BotConfiguration.getSheetVolunteersRoleColumn() + eventDates.size());
-        return storageUtils.readValuesRange(BotConfiguration.getSheetVolunteers(), rangeBegin, rangeEnd);
+    // eventVolunteersValues - окно матрицы роль x дата (getEventVolunteersRange), datesCount - число дат в окне
+    protected List<List<String>> getEventVolunteers(List<List<String>> eventVolunteersValues, List<String> eventRoles, int datesCount) {
+        List<List<String>> eventVolunteers = new ArrayList<>(eventRoles.size());
+        for (int roleIndex = 0; roleIndex < eventRoles.size(); roleIndex++) {
+            List<String> roleVolunteers = new ArrayList<>(datesCount);
+            for (int volunteersIndex = 0; volunteersIndex < datesCount; volunteersIndex++)
+                roleVolunteers.add(getSheetValue(eventVolunteersValues, roleIndex, volunteersIndex));
+            eventVolunteers.add(roleVolunteers);
+        }
+        return eventVolunteers;
+    }
+
+    protected String getSheetValue(List<List<String>> sheetValues, int rowIndex, int columnIndex) {
+        if (rowIndex < 0 || rowIndex >= sheetValues.size()) return "";
+        var row = sheetValues.get(rowIndex);
+        return columnIndex >= 0 && columnIndex < row.size() ? row.get(columnIndex) : "";
     }
 
-    protected void prepareEvents(List<String> eventRoles, List<LocalDate> eventDates, List<List<String>> eventVolunteers) {
-        for (int dateIndex = 0; dateIndex < eventDates.size(); dateIndex++) { // идем по датам событий
-            var eventDate = eventDates.get(dateIndex); // берем очередную дату
-            List<Participation> participants = new LinkedList<>(); // инициализируем список участников
-            for (int roleIndex = 0; roleIndex < eventRoles.size(); roleIndex++) { // проходим по списку ролей
-                var roleForEvent = eventRoles.get(roleIndex); // берем очередную роль
-                var isOrganizerRole = roleForEvent.equals(BotConfiguration.getSheetVolunteersRolesOrganizerName()); // определяем является ли это ролью Организатора
-                var volunteerForEvent = getVolunteerForEvent(roleIndex, dateIndex, eventVolunteers); // смотрим кто юзер на эту роль
-                if (isOrganizerRole && Objects.nonNull(volunteerForEvent) && !volunteerForEvent.getIsOrganizer()) { // если сейчас роль Организатора, юзер на нее есть и он как Организатор еще не отмечен (получается, в файле метка у него не стояла)
-                    volunteerForEvent.setIsOrganizer(true); // отмечаем юзера как Организатора
-                    mergeVolunteerToSheet(volunteerForEvent); // обновляем информацию о юзере в файле
+    // firstDateIndex - индекс первой даты окна: колонка события считается от начала строки дат, колонка матрицы - от начала окна
+    protected NavigableMap<LocalDate, Event> prepareEvents(StorageSnapshot loadedSnapshot, Roster roster, List<LocalDate> eventDates, int firstDateIndex, List<List<String>> eventVolunteers, Map<LocalDate, Event> previousEvents) {
+        NavigableMap<LocalDate, Event> preparedEvents = new TreeMap<>();
+        int changedEvents = 0;
+        var eventDatesIterator = eventDates.listIterator(firstDateIndex); // даты до окна не загружаем
+        while (eventDatesIterator.hasNext()) { // идем по датам событий
+            var dateIndex = eventDatesIterator.nextIndex();
+            var eventDate = eventDatesIterator.next(); // берем очередную дату
+            var columnNumber = BotConfiguration.getSheetVolunteersEventColumnStart() + dateIndex;
+            var volunteersIndex = dateIndex - firstDateIndex;
+            var previousEvent = previousEvents.get(eventDate);
+            var event = isEventUnchanged(loadedSnapshot, previousEvent, columnNumber, volunteersIndex, roster, eventVolunteers)
+                    ? previousEvent // в ячейках события ничего не поменялось - оставляем событие из кэша как есть
+                    : prepareEvent(loadedSnapshot, roster, eventDate, columnNumber, volunteersIndex, eventVolunteers);
+            if (event != previousEvent) changedEvents++;
+            preparedEvents.put(eventDate, event);
+        }
+        log.info("prepareEvents: {} events, {} changed", preparedEvents.size(), changedEvents);
+        return preparedEvents;
+    }
+
+    // событие не изменилось, если оно в той же колонке и на каждой позиции записан тот же самый волонтер (тот же объект)
+    protected boolean isEventUnchanged(StorageSnapshot loadedSnapshot, Event previousEvent, int columnNumber, int volunteersIndex, Roster roster, List<List<String>> eventVolunteers) {
+        if (Objects.isNull(previousEvent) || previousEvent.getColumnNumber() != columnNumber || previousEvent.getRoster().getRolesCount() != roster.getRolesCount())
+            return false;
+        for (int roleIndex = 0; roleIndex < roster.getRolesCount(); roleIndex++) {
+            if (previousEvent.getVolunteerAt(roleIndex) != getVolunteerForEvent(loadedSnapshot, roleIndex, volunteersIndex, eventVolunteers))
+                return false;
+        }
+        return true;
+    }
+
+    // отмечает Организаторами волонтеров, записанных на роль Организатора, у которых метки еще нет (в файле метка
+    // у них не стояла). Волонтеры снимка не меняются - их могут видеть опубликованные снимки, в новый снимок кладется копия
+    protected StorageSnapshot markOrganizers(StorageSnapshot loadedSnapshot, List<String> eventRoles, List<List<String>> eventVolunteers) {
+        var markedSnapshot = loadedSnapshot;
+        for (int roleIndex = 0; roleIndex < eventRoles.size() && roleIndex < eventVolunteers.size(); roleIndex++) {
+            if (!eventRoles.get(roleIndex).equals(BotConfiguration.getSheetVolunteersRolesOrganizerName())) continue;
+            for (String fullName : eventVolunteers.get(roleIndex)) {
+                var volunteer = fullName.isEmpty() ? null : markedSnapshot.getContacts().get(fullName);
+                if (Objects.isNull(volunteer) || Boolean.TRUE.equals(volunteer.getIsOrganizer())) continue;
+                if (isApplyingWarmSnapshot) { // кэш из файла - метку поставит загрузка после сверки
+                    isSheetUpdateDeferred = true;
+                    return loadedSnapshot;
                 }
-                participants.add(Participation.builder()
-                        .eventDate(eventDate)
-                        .eventRole(roleForEvent)
-                        .volunteer(volunteerForEvent)
-                        .sheetRowNumber(BotConfiguration.getSheetVolunteersRoleRowStart() + roleIndex).build());
+                var organizer = volunteer.toBuilder().isOrganizer(true).build();
+                // обновляем информацию о юзере в файле
+                if (Objects.nonNull(mergeVolunteerToSheet(organizer))) markedSnapshot = markedSnapshot.withReplacedVolunteer(volunteer, organizer);
             }
-            events.put(eventDate, Event.builder()
-                    .eventDate(eventDate)
-                    .participants(participants)
-                    .columnNumber(BotConfiguration.getSheetVolunteersEventColumnStart() + dateIndex).build());
         }
+        return markedSnapshot;
     }
 
-    protected Volunteer getVolunteerForEvent(int roleIndex, int dateIndex, List<List<String>> roleVolunteers) {
+    protected Event prepareEvent(StorageSnapshot loadedSnapshot, Roster roster, LocalDate eventDate, int columnNumber, int volunteersIndex, List<List<String>> eventVolunteers) {
+        var volunteerIds = new int[roster.getRolesCount()]; // номера волонтеров по ролям, изначально все позиции свободны
+        for (int roleIndex = 0; roleIndex < roster.getRolesCount(); roleIndex++) { // проходим по списку ролей
+            var volunteerForEvent = getVolunteerForEvent(loadedSnapshot, roleIndex, volunteersIndex, eventVolunteers); // смотрим кто юзер на эту роль
+            roster = roster.withVolunteer(volunteerForEvent); // волонтер мог появиться в контактах после загрузки
+            volunteerIds[roleIndex] = roster.getVolunteerId(volunteerForEvent);
+        }
+        return Event.builder()
+                .eventDate(eventDate)
+                .columnNumber(columnNumber)
+                .roster(roster)
+                .volunteerIds(volunteerIds).build();
+    }
+
+    protected Volunteer getVolunteerForEvent(StorageSnapshot loadedSnapshot, int roleIndex, int volunteersIndex, List<List<String>> roleVolunteers) {
         return !Objects.isNull(roleVolunteers) &&
                 roleVolunteers.size() >= roleIndex + 1 &&
-                roleVolunteers.get(roleIndex).size() >= dateIndex + 1
-                ? contacts.get(roleVolunteers.get(roleIndex).get(dateIndex))
+                roleVolunteers.get(roleIndex).size() >= volunteersIndex + 1
+                ? loadedSnapshot.getContacts().get(roleVolunteers.get(roleIndex).get(volunteersIndex))
                 : null;
     }
 
-    protected String getCellAddress(Integer rowNumber, Integer columnNumber) {
-        var rowPrefix = "R";
-        var columnPrefix = "C";
-        var rowAddress = Objects.isNull(rowNumber) ? "" : rowPrefix + rowNumber;
-        var columnAddress = Objects.isNull(columnNumber) ? "" : columnPrefix + columnNumber;
-        return rowAddress + columnAddress;
+    protected CellRef getCellAddress(Integer rowNumber, Integer columnNumber) {
+        return CellRef.of(rowNumber, columnNumber);
     }
 
     protected Volunteer mergeVolunteerToSheet(Volunteer volunteer) {
-        var cellRangeBegin = getCellAddress(Optional.ofNullable(volunteer.getSheetRowNumber()).orElse(BotConfiguration.getSheetContactsRowStart() + contacts.size()), BotConfiguration.getSheetContactsColumnFirst());
-        var cellRangeEnd = getCellAddress(Optional.ofNullable(volunteer.getSheetRowNumber()).orElse(BotConfiguration.getSheetContactsRowStart() + contacts.size()), BotConfiguration.getSheetContactsColumnLast());
+        var rowNumber = Optional.ofNullable(volunteer.getSheetRowNumber()).orElse(BotConfiguration.getSheetContactsRowStart() + snapshot.getContacts().size());
+        var cellRange = RangeRef.of(
+                getCellAddress(rowNumber, BotConfiguration.getSheetContactsColumnFirst()),
+                getCellAddress(rowNumber, BotConfiguration.getSheetContactsColumnLast()));
         if (storageUtils.writesValues(
                 BotConfiguration.getSheetContacts(),
-                cellRangeBegin + ":" + cellRangeEnd,
+                cellRange,
                 List.of(List.of(
                         volunteer.getFullName(),
                         volunteer.getTgUserName(),
@@ -322,7 +876,11 @@ public abstract class Storage implements TelegramBotStorage {
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
                 }
-                checkIfCacheIsObsoletedAndUpdateIfNeeded();
+                try {
+                    updateCacheIfSheetChanged();
+                } catch (RuntimeException e) {
+                    log.error("Error checking sheet for changes", e);
+                }
             }
         }
     }
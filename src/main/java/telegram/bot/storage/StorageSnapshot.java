@@ -0,0 +1,113 @@
+package telegram.bot.storage;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import telegram.bot.model.Event;
+import telegram.bot.model.Roster;
+import telegram.bot.model.Volunteer;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Неизменяемый снимок кэша Storage: контакты с индексами, события и основные роли.
+ * Снимок никогда не меняется после публикации - любое изменение строит новый снимок (copy-on-write),
+ * который Storage публикует одной записью в volatile поле.
+ */
+@Getter
+@Builder(toBuilder = true)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StorageSnapshot {
+    // контакты по ФИО
+    @Builder.Default
+    Map<String, Volunteer> contacts = Collections.emptyMap();
+
+    // индексы контактов для быстрого поиска по телеграму, коду 5 верст и id в телеграме
+    @Builder.Default
+    Map<String, Volunteer> contactsByTgUserName = Collections.emptyMap();
+
+    @Builder.Default
+    Map<String, Volunteer> contactsByCode = Collections.emptyMap();
+
+    @Builder.Default
+    Map<Long, Volunteer> contactsByTgUserId = Collections.emptyMap();
+
+    // события по дате, упорядочены по возрастанию - ближайшие, диапазон и последнее событие ищутся за O(log n)
+    @Builder.Default
+    NavigableMap<LocalDate, Event> events = Collections.emptyNavigableMap();
+
+    @Builder.Default
+    List<String> mainRoles = Collections.emptyList();
+
+    @Builder.Default
+    Set<String> mainRolesSet = Collections.emptySet();
+
+    // строки контактов, прочитанные при загрузке, их хэши и созданные по ним волонтеры -
+    // при обновлении кэша неизменившиеся строки не разбираются и не расшифровываются заново
+    @Builder.Default
+    List<List<String>> contactsRows = Collections.emptyList();
+
+    @Builder.Default
+    int[] contactsRowHashes = new int[0];
+
+    @Builder.Default
+    List<Volunteer> contactsRowVolunteers = Collections.emptyList();
+
+    // список ролей, по которому построены события
+    @Builder.Default
+    List<String> eventRoles = Collections.emptyList();
+
+    // роли и волонтеры с номерами, на которые ссылаются события этой загрузки
+    @Builder.Default
+    Roster roster = Roster.of(1, Collections.emptyList(), Collections.emptySet(), Collections.emptyList());
+
+    // номера колонок всех дат из строки дат листа "Волонтеры"; в events - только даты из окна загрузки
+    // и подгруженные по запросу
+    @Builder.Default
+    NavigableMap<LocalDate, Integer> eventColumns = Collections.emptyNavigableMap();
+
+    public static StorageSnapshot empty() {
+        return StorageSnapshot.builder().build();
+    }
+
+    // новый снимок, в котором волонтер добавлен или переиндексирован (телеграм, код или id могли поменяться)
+    public StorageSnapshot withVolunteer(Volunteer volunteer) {
+        return withReplacedVolunteer(volunteer, volunteer);
+    }
+
+    // новый снимок, в котором волонтер replacedVolunteer заменен измененной копией volunteer;
+    // сам replacedVolunteer не меняется - старые снимки продолжают его видеть как есть
+    public StorageSnapshot withReplacedVolunteer(Volunteer replacedVolunteer, Volunteer volunteer) {
+        Map<String, Volunteer> newContacts = new HashMap<>(contacts);
+        if (newContacts.get(volunteer.getFullName()) == replacedVolunteer) newContacts.put(volunteer.getFullName(), volunteer);
+        else newContacts.putIfAbsent(volunteer.getFullName(), volunteer);
+        Map<String, Volunteer> newByTgUserName = new HashMap<>(contactsByTgUserName);
+        Map<String, Volunteer> newByCode = new HashMap<>(contactsByCode);
+        Map<Long, Volunteer> newByTgUserId = new HashMap<>(contactsByTgUserId);
+        newByTgUserName.values().removeIf(indexed -> indexed == volunteer || indexed == replacedVolunteer);
+        newByCode.values().removeIf(indexed -> indexed == volunteer || indexed == replacedVolunteer);
+        newByTgUserId.values().removeIf(indexed -> indexed == volunteer || indexed == replacedVolunteer);
+        indexVolunteer(volunteer, newByTgUserName, newByCode, newByTgUserId);
+        return toBuilder()
+                .contacts(Collections.unmodifiableMap(newContacts))
+                .contactsByTgUserName(Collections.unmodifiableMap(newByTgUserName))
+                .contactsByCode(Collections.unmodifiableMap(newByCode))
+                .contactsByTgUserId(Collections.unmodifiableMap(newByTgUserId))
+                .build();
+    }
+
+    // новый снимок, в котором событие на дату заменено (или добавлено)
+    public StorageSnapshot withEvent(Event event) {
+        NavigableMap<LocalDate, Event> newEvents = new TreeMap<>(events);
+        newEvents.put(event.getEventDate(), event);
+        return toBuilder().events(Collections.unmodifiableNavigableMap(newEvents)).build();
+    }
+
+    public static void indexVolunteer(Volunteer volunteer, Map<String, Volunteer> byTgUserName, Map<String, Volunteer> byCode, Map<Long, Volunteer> byTgUserId) {
+        if (Objects.nonNull(volunteer.getTgUserName())) byTgUserName.putIfAbsent(volunteer.getTgUserName(), volunteer);
+        if (Objects.nonNull(volunteer.getCode())) byCode.putIfAbsent(volunteer.getCode(), volunteer);
+        if (Objects.nonNull(volunteer.getTgUserId()) && volunteer.getTgUserId() != 0) byTgUserId.putIfAbsent(volunteer.getTgUserId(), volunteer);
+    }
+}
@@ -2,24 +2,58 @@ package telegram.bot.storage;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface StorageUtils {
 
-    // format of cellAddress, rangeBegin, rangeEnd - "RXCY" (Row X Column Y).
+    // addresses are CellRef/RangeRef; string format of cellAddress, rangeBegin, rangeEnd - "RXCY" (Row X Column Y).
     // RX may absent (CY in such a case means "get all cell until last non-empty cell in Column Y")
     // CY may absent (RX in such a case means "get all cell until last non-empty cell in Row X")
 
-    // writes 'cellValue' into 'cellAddress' at 'sheetName'
-    boolean writeCellValue(String sheetName, String cellAddress, String cellValue);
+    // writes 'cellValue' into 'cell' at 'sheetName'
+    boolean writeCellValue(String sheetName, CellRef cell, String cellValue);
 
-    // writes martix 'values' starting from 'cellAddress' at 'sheetName'
-    boolean writesValues(String sheetName, String cellAddress, List<List<Object>> values);
+    default boolean writeCellValue(String sheetName, String cellAddress, String cellValue) {
+        return writeCellValue(sheetName, CellRef.parse(cellAddress), cellValue);
+    }
+
+    // writes martix 'values' starting from the top left cell of 'range' at 'sheetName'
+    boolean writesValues(String sheetName, RangeRef range, List<List<Object>> values);
+
+    default boolean writesValues(String sheetName, String cellAddress, List<List<Object>> values) {
+        return writesValues(sheetName, RangeRef.parse(cellAddress), values);
+    }
+
+    // writes several matrices into 'sheetName' in one request; keys are ranges of each matrix, applied in iteration order
+    default boolean writeValuesBatch(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        return valuesByRange.entrySet().stream().allMatch(entry -> writesValues(sheetName, entry.getKey(), entry.getValue()));
+    }
 
     // reads list of String from 'rangeBegin' to 'rangeEnd' at 'sheetName'
     List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd);
 
     // reads matrix of String from 'rangeBegin' to 'rangeEnd' at 'sheetName'
-    List<List<String>> readValuesRange(String sheetName, String rangeBegin, String rangeEnd);
+    default List<List<String>> readValuesRange(String sheetName, String rangeBegin, String rangeEnd) {
+        return readValuesRanges(List.of(SheetRange.of(sheetName, rangeBegin, rangeEnd))).get(0);
+    }
+
+    // reads several matrices of String in one request, result is in the same order as 'ranges'
+    List<List<List<String>>> readValuesRanges(List<SheetRange> ranges);
+
+    // reads several ranges in one request pushing rows to 'visitor' as they are parsed, without building the matrices
+    default void visitValuesRanges(List<SheetRange> ranges, RowVisitor visitor) {
+        var values = readValuesRanges(ranges);
+        for (int rangeIndex = 0; rangeIndex < values.size(); rangeIndex++) {
+            var rows = values.get(rangeIndex);
+            for (int rowIndex = 0; rowIndex < rows.size(); rowIndex++) visitor.visitRow(rangeIndex, rowIndex, rows.get(rowIndex));
+        }
+    }
+
+    // 'listener' gets writes (sheet, range and values) that were acknowledged but later rejected by the sheet (write-behind);
+    // storages that write synchronously report failures by the return value and never call it
+    default void setFailedWriteListener(Consumer<FailedWrite> listener) {
+    }
 
     default LocalDateTime getSheetLastUpdateTime() {
         return LocalDateTime.now().minusYears(1);
@@ -0,0 +1,178 @@
+package telegram.bot.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Потоковое чтение диапазонов из .xlsx через SAX (XSSFReader): книга целиком в память не загружается,
+ * разбор листа прекращается, как только пройдена последняя нужная строка.
+ * Таблица общих строк кэшируется и перечитывается, только если файл поменялся.
+ */
+@Slf4j
+public class StreamingExcelReader {
+    private final String pathToExcelFile;
+
+    // общие строки книги и отметка файла, для которого они прочитаны
+    private ReadOnlySharedStringsTable sharedStrings;
+    private long sharedStringsFileModified = -1;
+    private long sharedStringsFileLength = -1;
+
+    public StreamingExcelReader(String pathToExcelFile) {
+        this.pathToExcelFile = pathToExcelFile;
+    }
+
+    // читает диапазоны (каждый лист разбирается один раз); результат в порядке запрошенных диапазонов
+    public List<List<List<String>>> read(List<SheetRange> ranges) {
+        return RowVisitor.collect(ranges.size(), visitor -> visit(ranges, visitor));
+    }
+
+    // читает диапазоны, передавая строки получателю по мере разбора листа
+    public synchronized void visit(List<SheetRange> ranges, RowVisitor visitor) {
+        Map<String, List<RangeCollector>> collectorsBySheet = new HashMap<>();
+        for (int rangeIndex = 0; rangeIndex < ranges.size(); rangeIndex++) {
+            var range = ranges.get(rangeIndex);
+            collectorsBySheet.computeIfAbsent(range.getSheetName(), sheetName -> new ArrayList<>())
+                    .add(new RangeCollector(range, rangeIndex, visitor));
+        }
+
+        var file = new File(pathToExcelFile);
+        try (OPCPackage excelPackage = OPCPackage.open(file, PackageAccess.READ)) {
+            var reader = new XSSFReader(excelPackage);
+            var strings = getSharedStrings(excelPackage, file);
+            var styles = reader.getStylesTable();
+            var sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext() && !collectorsBySheet.isEmpty()) {
+                try (InputStream sheetStream = sheets.next()) {
+                    var sheetCollectors = collectorsBySheet.remove(sheets.getSheetName());
+                    if (sheetCollectors != null) {
+                        readSheet(sheetStream, strings, styles, sheetCollectors);
+                        sheetCollectors.forEach(RangeCollector::finish);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.info("Error reading excel file");
+            throw new RuntimeException(e);
+        }
+        if (!collectorsBySheet.isEmpty()) throw new RuntimeException("Sheets not found: " + collectorsBySheet.keySet());
+    }
+
+    private void readSheet(InputStream sheetStream, ReadOnlySharedStringsTable strings, StylesTable styles, List<RangeCollector> collectors) throws Exception {
+        var lastRowIndex = collectors.stream().mapToInt(RangeCollector::getLastRowIndex).max().orElse(Integer.MAX_VALUE);
+        var parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, new XSSFSheetXMLHandler.SheetContentsHandler() {
+            int rowIndex;
+            int nextColumnIndex;
+
+            @Override
+            public void startRow(int rowNum) {
+                // все нужные строки уже прочитаны - дальше лист не разбираем
+                if (rowNum > lastRowIndex) throw new StopParsingException();
+                rowIndex = rowNum;
+                nextColumnIndex = 0;
+            }
+
+            @Override
+            public void endRow(int rowNum) {
+            }
+
+            @Override
+            public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+                var columnIndex = cellReference == null ? nextColumnIndex : CellRef.parseA1(cellReference).getColumn() - 1;
+                nextColumnIndex = columnIndex + 1;
+                var value = formattedValue == null ? "" : formattedValue;
+                collectors.forEach(collector -> collector.accept(rowIndex, columnIndex, value));
+            }
+        }, new DataFormatter(), false));
+        try {
+            parser.parse(new InputSource(sheetStream));
+        } catch (StopParsingException e) {
+            // разбор остановлен намеренно
+        }
+    }
+
+    private ReadOnlySharedStringsTable getSharedStrings(OPCPackage excelPackage, File file) throws Exception {
+        if (sharedStrings == null || sharedStringsFileModified != file.lastModified() || sharedStringsFileLength != file.length()) {
+            sharedStrings = new ReadOnlySharedStringsTable(excelPackage);
+            sharedStringsFileModified = file.lastModified();
+            sharedStringsFileLength = file.length();
+        }
+        return sharedStrings;
+    }
+
+    // собирает значения одного диапазона построчно; пропущенные ячейки внутри строки заполняются пустыми строками.
+    // строка передается получателю, когда начинается следующая строка или вызван finish
+    static class RangeCollector {
+        private final int firstRowIndex;
+        private final int firstColumnIndex;
+        private final int lastRowIndex;
+        private final int lastColumnIndex;
+        private final int rangeIndex;
+        private final RowVisitor visitor;
+
+        // текущая (еще не переданная) строка и номер следующей строки диапазона, которую ждет получатель
+        private List<String> row;
+        private int rowIndex = -1;
+        private int nextRowIndex;
+
+        RangeCollector(SheetRange range, int rangeIndex, RowVisitor visitor) {
+            // не заданные части адреса: начало - с первой строки/колонки, конец - до последней
+            var begin = range.getRangeBegin();
+            var end = range.getRangeEnd();
+            firstRowIndex = begin != null && begin.hasRow() ? begin.getRow() - 1 : 0;
+            firstColumnIndex = begin != null && begin.hasColumn() ? begin.getColumn() - 1 : 0;
+            lastRowIndex = end != null && end.hasRow() ? end.getRow() - 1 : Integer.MAX_VALUE;
+            lastColumnIndex = end != null && end.hasColumn() ? end.getColumn() - 1 : Integer.MAX_VALUE;
+            this.rangeIndex = rangeIndex;
+            this.visitor = visitor;
+        }
+
+        int getFirstRowIndex() {
+            return firstRowIndex;
+        }
+
+        int getLastRowIndex() {
+            return lastRowIndex;
+        }
+
+        // ячейки должны приходить по строкам сверху вниз, внутри строки - слева направо
+        void accept(int sheetRowIndex, int columnIndex, String value) {
+            if (sheetRowIndex < firstRowIndex || sheetRowIndex > lastRowIndex || columnIndex < firstColumnIndex || columnIndex > lastColumnIndex)
+                return;
+            if (sheetRowIndex - firstRowIndex != rowIndex) {
+                finish();
+                rowIndex = sheetRowIndex - firstRowIndex;
+                row = new ArrayList<>();
+            }
+            while (row.size() < columnIndex - firstColumnIndex) row.add("");
+            row.add(value);
+        }
+
+        // передает текущую строку (и пустые строки перед ней)
+        void finish() {
+            if (row == null) return;
+            while (nextRowIndex < rowIndex) visitor.visitRow(rangeIndex, nextRowIndex++, new ArrayList<>());
+            visitor.visitRow(rangeIndex, nextRowIndex++, row);
+            row = null;
+        }
+    }
+
+    private static class StopParsingException extends RuntimeException {
+        StopParsingException() {
+            super(null, null, false, false);
+        }
+    }
+}
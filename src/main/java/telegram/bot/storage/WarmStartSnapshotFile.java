@@ -0,0 +1,120 @@
+package telegram.bot.storage;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Файл для быстрого старта: диапазоны, прочитанные при последней загрузке кэша, и время изменения таблицы,
+ * с которым кэш был сверен. При старте Storage собирает кэш из файла без обращения к таблице,
+ * а актуальность проверяет в фоне. В файле хранятся строки таблицы как есть (id в телеграме зашифрованы).
+ */
+@Slf4j
+public class WarmStartSnapshotFile {
+    private static final int MAGIC = 0x57534E31; // "WSN1"
+
+    private final Path path;
+
+    public WarmStartSnapshotFile(String path) {
+        this.path = Path.of(path);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Content {
+        // время, до которого кэш совпадает с таблицей
+        LocalDateTime sheetLastUpdateTime;
+        // описание прочитанных диапазонов - если настройки листов поменялись, файл не подходит
+        List<String> ranges;
+        List<List<List<String>>> values;
+    }
+
+    public void save(LocalDateTime sheetLastUpdateTime, List<SheetRange> ranges, List<List<List<String>>> values) {
+        try {
+            var target = path.toAbsolutePath();
+            var temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    output.writeInt(MAGIC);
+                    writeString(output, sheetLastUpdateTime.toString());
+                    output.writeInt(ranges.size());
+                    for (SheetRange range : ranges) writeString(output, range.toString());
+                    output.writeInt(values.size());
+                    for (List<List<String>> rangeValues : values) {
+                        output.writeInt(rangeValues.size());
+                        for (List<String> row : rangeValues) {
+                            output.writeInt(row.size());
+                            for (String value : row) writeString(output, value);
+                        }
+                    }
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.error("Error saving warm start snapshot", e);
+        }
+    }
+
+    // содержимое файла или null, если файла нет, он поврежден или прочитан для других диапазонов;
+    // в Content - все сохраненные диапазоны, включая прочитанные сверх запрошенных
+    public Content load(List<SheetRange> ranges) {
+        if (!Files.exists(path)) return null;
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) return null;
+            var sheetLastUpdateTime = LocalDateTime.parse(readString(input));
+            List<String> savedRanges = new ArrayList<>();
+            var rangesCount = input.readInt();
+            for (int i = 0; i < rangesCount; i++) savedRanges.add(readString(input));
+            // после запрошенных диапазонов могут идти производные (окно матрицы волонтеров), их разбирает Storage
+            if (savedRanges.size() < ranges.size() || !savedRanges.subList(0, ranges.size()).equals(ranges.stream().map(SheetRange::toString).toList())) {
+                log.info("Warm start snapshot is made for other ranges {}", savedRanges);
+                return null;
+            }
+            List<List<List<String>>> values = new ArrayList<>();
+            var valuesCount = input.readInt();
+            for (int i = 0; i < valuesCount; i++) {
+                var rowsCount = input.readInt();
+                List<List<String>> rangeValues = new ArrayList<>(rowsCount);
+                for (int j = 0; j < rowsCount; j++) {
+                    var columnsCount = input.readInt();
+                    List<String> row = new ArrayList<>(columnsCount);
+                    for (int k = 0; k < columnsCount; k++) row.add(readString(input));
+                    rangeValues.add(row);
+                }
+                values.add(rangeValues);
+            }
+            return new Content(sheetLastUpdateTime, savedRanges, values);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error reading warm start snapshot", e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        var bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        var bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
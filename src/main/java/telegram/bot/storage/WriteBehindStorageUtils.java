@@ -0,0 +1,366 @@
+package telegram.bot.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Отложенная запись в таблицу: запись считается принятой, как только попала в очередь и в файл очереди на диске
+ * (fsync); при старте очередь восстанавливается из файла. Изменения одной и той же ячейки схлопываются,
+ * очередь каждого листа отправляется одним пакетом по таймеру или при накоплении порога изменений.
+ * При временной ошибке (сеть, квота, сбой таблицы) пакет остается в очереди и повторяется с растущей паузой сколько угодно долго;
+ * пакет, который таблица отвергла окончательно, отправляется по одной ячейке, а отвергнутые ячейки откладываются
+ * в список неудачных записей.
+ * Перед чтением и при остановке приложения очередь сбрасывается принудительно; записи, которые отправить не удалось,
+ * накладываются на прочитанное - читатель видит все подтвержденные записи, даже пока таблица недоступна.
+ */
+@Slf4j
+public class WriteBehindStorageUtils implements StorageUtils {
+    private static final long MAX_RETRY_DELAY_ms = 60_000;
+
+    private final StorageUtils storageUtils;
+    private final long flushIntervalMilliSec;
+    private final int flushThreshold;
+    private final ScheduledExecutorService flushExecutor;
+
+    // ожидающие записи: лист -> адрес ячейки -> значения; порядок адресов - порядок последней записи
+    private final Map<String, LinkedHashMap<RangeRef, List<List<Object>>>> pendingWrites = new LinkedHashMap<>();
+    private int pendingWritesCount = 0;
+    // файл очереди: принятые, но еще не отправленные записи; null - очередь только в памяти
+    private final WriteRecordLog writeLog;
+    private final Object flushLock = new Object();
+    // пауза перед следующей попыткой после временной ошибки; фоновый сброс и чтения до nextRetryTimeMillis очередь не трогают
+    private long retryDelayMilliSec = 0;
+    private volatile long nextRetryTimeMillis = 0;
+    private final List<FailedWrite> failedWrites = new ArrayList<>();
+    private volatile Consumer<FailedWrite> failedWriteListener = failedWrite -> {
+    };
+    // время изменения таблицы (по данным самой таблицы), которое уже учтено в кэше: снято перед последним чтением
+    // или сразу после нашего сброса очереди, если до сброса таблицу никто не менял; null - неизвестно
+    private volatile LocalDateTime knownSheetLastUpdateTime;
+
+    public WriteBehindStorageUtils(StorageUtils storageUtils, long flushIntervalMilliSec, int flushThreshold) {
+        this(storageUtils, flushIntervalMilliSec, flushThreshold, null);
+    }
+
+    public WriteBehindStorageUtils(StorageUtils storageUtils, long flushIntervalMilliSec, int flushThreshold, String writeLogFile) {
+        this.storageUtils = storageUtils;
+        this.flushIntervalMilliSec = flushIntervalMilliSec;
+        this.flushThreshold = flushThreshold;
+        this.writeLog = openWriteLog(writeLogFile);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "sheet-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMilliSec, flushIntervalMilliSec, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Error flushing pending writes on shutdown, they are kept in the write-behind log", e);
+            }
+        }, "sheet-write-behind-shutdown"));
+    }
+
+    @Override
+    public boolean writeCellValue(String sheetName, CellRef cell, String cellValue) {
+        return writesValues(sheetName, RangeRef.of(cell), List.of(List.of(cellValue)));
+    }
+
+    @Override
+    public boolean writesValues(String sheetName, RangeRef range, List<List<Object>> values) {
+        return writeValuesBatch(sheetName, Map.of(range, values));
+    }
+
+    @Override
+    public boolean writeValuesBatch(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        boolean thresholdReached;
+        synchronized (pendingWrites) {
+            if (writeLog != null) try {
+                // запись подтверждается только после сброса в файл очереди
+                writeLog.append(sheetName, valuesByRange);
+                writeLog.force();
+            } catch (IOException e) {
+                log.error("Error writing write-behind log", e);
+                return false;
+            }
+            enqueue(sheetName, valuesByRange);
+            thresholdReached = pendingWritesCount >= flushThreshold;
+        }
+        if (thresholdReached) flushExecutor.execute(this::flushQuietly);
+        return true;
+    }
+
+    @Override
+    public List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd) {
+        List<String> valuesList = new LinkedList<>();
+        readValuesRange(sheetName, rangeBegin, rangeEnd).forEach(values -> valuesList.add(!values.isEmpty() ? values.get(0) : ""));
+        return valuesList;
+    }
+
+    @Override
+    public List<List<String>> readValuesRange(String sheetName, String rangeBegin, String rangeEnd) {
+        return readValuesRanges(List.of(SheetRange.of(sheetName, rangeBegin, rangeEnd))).get(0);
+    }
+
+    // чтение и снятие очереди идут под flushLock: пока читаем, очередь не уходит в таблицу, поэтому каждая
+    // подтвержденная запись есть либо в прочитанном, либо в наложенной очереди
+    @Override
+    public List<List<List<String>>> readValuesRanges(List<SheetRange> ranges) {
+        synchronized (flushLock) {
+            prepareRead();
+            return overlayPendingWrites(ranges, storageUtils.readValuesRanges(ranges));
+        }
+    }
+
+    @Override
+    public void visitValuesRanges(List<SheetRange> ranges, RowVisitor visitor) {
+        synchronized (flushLock) {
+            prepareRead();
+            if (!hasPendingWrites(ranges)) {
+                storageUtils.visitValuesRanges(ranges, visitor);
+                return;
+            }
+            // очередь накладывается на матрицы целиком, строки отдаются уже после наложения
+            var values = overlayPendingWrites(ranges, storageUtils.readValuesRanges(ranges));
+            for (int rangeIndex = 0; rangeIndex < values.size(); rangeIndex++) {
+                var rows = values.get(rangeIndex);
+                for (int rowIndex = 0; rowIndex < rows.size(); rowIndex++) visitor.visitRow(rangeIndex, rowIndex, rows.get(rowIndex));
+            }
+        }
+    }
+
+    @Override
+    public LocalDateTime getSheetLastUpdateTime() {
+        // изменение, сделанное нашим же сбросом очереди, кэш не устаревает: кэш обновлен еще при постановке в очередь.
+        // Сравниваются только значения самой таблицы; любое другое значение - настоящее изменение и отдается как есть
+        var sheetLastUpdateTime = storageUtils.getSheetLastUpdateTime();
+        return sheetLastUpdateTime.equals(knownSheetLastUpdateTime) ? LocalDateTime.MIN : sheetLastUpdateTime;
+    }
+
+    public int getPendingWritesCount() {
+        synchronized (pendingWrites) {
+            return pendingWritesCount;
+        }
+    }
+
+    @Override
+    public void setFailedWriteListener(Consumer<FailedWrite> listener) {
+        this.failedWriteListener = listener;
+    }
+
+    public List<FailedWrite> getFailedWrites() {
+        synchronized (failedWrites) {
+            return List.copyOf(failedWrites);
+        }
+    }
+
+    // отправляет все накопленные записи; при временной ошибке записи остаются в очереди и в файле очереди,
+    // отвергнутые таблицей записи откладываются в список неудачных; первая временная ошибка пробрасывается
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, LinkedHashMap<RangeRef, List<List<Object>>>> writesToFlush;
+            synchronized (pendingWrites) {
+                if (pendingWritesCount == 0) return;
+                writesToFlush = new LinkedHashMap<>(pendingWrites);
+                pendingWrites.clear();
+                pendingWritesCount = 0;
+            }
+            // если таблицу до нашего сброса никто не менял, ее новое время изменения - наше собственное
+            var sheetLastUpdateTimeBeforeFlush = readSheetLastUpdateTime();
+            Map<String, LinkedHashMap<RangeRef, List<List<Object>>>> writesToRetry = new LinkedHashMap<>();
+            RuntimeException flushError = null;
+            var isWritten = false;
+            for (var sheetWrites : writesToFlush.entrySet()) {
+                var sheetName = sheetWrites.getKey();
+                try {
+                    writeSheet(sheetName, sheetWrites.getValue());
+                    isWritten = true;
+                } catch (SheetWriteRejectedException e) {
+                    // пакет отвергнут целиком - отправляем по одной ячейке, чтобы одна плохая запись не держала очередь
+                    log.error("Batch write to {} is rejected, writing cells one by one", sheetName, e);
+                    for (var write : sheetWrites.getValue().entrySet()) {
+                        try {
+                            writeSheet(sheetName, Map.of(write.getKey(), write.getValue()));
+                            isWritten = true;
+                        } catch (SheetWriteRejectedException rejected) {
+                            dropRejectedWrite(sheetName, write.getKey(), write.getValue(), rejected);
+                        } catch (RuntimeException cellError) {
+                            writesToRetry.computeIfAbsent(sheetName, name -> new LinkedHashMap<>()).put(write.getKey(), write.getValue());
+                            if (flushError == null) flushError = cellError;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    writesToRetry.put(sheetName, sheetWrites.getValue());
+                    if (flushError == null) flushError = e;
+                }
+            }
+            if (isWritten && Objects.nonNull(sheetLastUpdateTimeBeforeFlush) && sheetLastUpdateTimeBeforeFlush.equals(knownSheetLastUpdateTime))
+                knownSheetLastUpdateTime = readSheetLastUpdateTime();
+            if (!writesToRetry.isEmpty()) requeue(writesToRetry);
+            rewriteWriteLog();
+            // временные ошибки повторяются без ограничения числа попыток, паузы между попытками растут до MAX_RETRY_DELAY_ms
+            retryDelayMilliSec = flushError == null ? 0 : Math.min(Math.max(retryDelayMilliSec * 2, flushIntervalMilliSec), MAX_RETRY_DELAY_ms);
+            nextRetryTimeMillis = System.currentTimeMillis() + retryDelayMilliSec;
+            if (flushError != null) throw flushError;
+        }
+    }
+
+    private void writeSheet(String sheetName, Map<RangeRef, List<List<Object>>> sheetWrites) {
+        if (!storageUtils.writeValuesBatch(sheetName, sheetWrites))
+            throw new IllegalStateException("sheet " + sheetName + " is not written");
+    }
+
+    private void dropRejectedWrite(String sheetName, RangeRef range, List<List<Object>> values, SheetWriteRejectedException e) {
+        log.error("Write to {}!{} is rejected by the sheet and dropped from the queue, values: {}", sheetName, range, values, e);
+        var failedWrite = new FailedWrite(sheetName, range, values);
+        synchronized (failedWrites) {
+            failedWrites.add(failedWrite);
+        }
+        failedWriteListener.accept(failedWrite);
+    }
+
+    // перед чтением отправляет очередь и запоминает время изменения таблицы: прочитанное ему соответствует
+    private void prepareRead() {
+        synchronized (flushLock) {
+            flushQuietly();
+            knownSheetLastUpdateTime = readSheetLastUpdateTime();
+        }
+    }
+
+    private boolean hasPendingWrites(List<SheetRange> ranges) {
+        synchronized (pendingWrites) {
+            return ranges.stream().anyMatch(range -> pendingWrites.containsKey(range.getSheetName()));
+        }
+    }
+
+    // накладывает на прочитанные матрицы записи, которые еще в очереди (не отправлены из-за ошибки или паузы повтора)
+    private List<List<List<String>>> overlayPendingWrites(List<SheetRange> ranges, List<List<List<String>>> rangesValues) {
+        Map<String, List<Map.Entry<RangeRef, List<List<Object>>>>> writesBySheet = new HashMap<>();
+        synchronized (pendingWrites) {
+            for (var range : ranges) {
+                var sheetWrites = pendingWrites.get(range.getSheetName());
+                if (sheetWrites != null) writesBySheet.putIfAbsent(range.getSheetName(), List.copyOf(sheetWrites.entrySet()));
+            }
+        }
+        if (writesBySheet.isEmpty()) return rangesValues;
+        List<List<List<String>>> overlaidValues = new ArrayList<>(rangesValues);
+        for (int rangeIndex = 0; rangeIndex < ranges.size(); rangeIndex++) {
+            var sheetWrites = writesBySheet.get(ranges.get(rangeIndex).getSheetName());
+            if (sheetWrites == null) continue;
+            List<List<String>> values = new ArrayList<>();
+            rangesValues.get(rangeIndex).forEach(row -> values.add(new ArrayList<>(row)));
+            // записи накладываются в порядке очереди - более поздняя побеждает
+            sheetWrites.forEach(write -> overlayWrite(ranges.get(rangeIndex), values, write.getKey().getBegin(), write.getValue()));
+            overlaidValues.set(rangeIndex, values);
+        }
+        return overlaidValues;
+    }
+
+    // кладет значения записи, начиная с ячейки writeBegin, в матрицу диапазона range; ячейки вне диапазона пропускаются
+    private static void overlayWrite(SheetRange range, List<List<String>> values, CellRef writeBegin, List<List<Object>> writeValues) {
+        var rangeBegin = range.getRangeBegin();
+        var rangeEnd = range.getRangeEnd();
+        var firstRow = rangeBegin != null && rangeBegin.hasRow() ? rangeBegin.getRow() : 1;
+        var firstColumn = rangeBegin != null && rangeBegin.hasColumn() ? rangeBegin.getColumn() : 1;
+        var lastRow = rangeEnd != null && rangeEnd.hasRow() ? rangeEnd.getRow() : Integer.MAX_VALUE;
+        var lastColumn = rangeEnd != null && rangeEnd.hasColumn() ? rangeEnd.getColumn() : Integer.MAX_VALUE;
+        for (int i = 0; i < writeValues.size(); i++)
+            for (int j = 0; j < writeValues.get(i).size(); j++) {
+                var row = Math.max(writeBegin.getRow(), 1) + i;
+                var column = Math.max(writeBegin.getColumn(), 1) + j;
+                if (row < firstRow || row > lastRow || column < firstColumn || column > lastColumn) continue;
+                var rowIndex = row - firstRow;
+                var columnIndex = column - firstColumn;
+                var value = String.valueOf(writeValues.get(i).get(j));
+                // пустое значение за пределами прочитанного ничего не меняет - таблица пустые хвосты не отдает
+                if (value.isEmpty() && (rowIndex >= values.size() || columnIndex >= values.get(rowIndex).size())) continue;
+                while (values.size() <= rowIndex) values.add(new ArrayList<>());
+                var rowValues = values.get(rowIndex);
+                while (rowValues.size() <= columnIndex) rowValues.add("");
+                rowValues.set(columnIndex, value);
+            }
+    }
+
+    // время изменения таблицы или null, если его не удалось получить (тогда изменение не маскируется)
+    private LocalDateTime readSheetLastUpdateTime() {
+        try {
+            return storageUtils.getSheetLastUpdateTime();
+        } catch (RuntimeException e) {
+            log.error("Error getting sheet last update time", e);
+            return null;
+        }
+    }
+
+    private void flushQuietly() {
+        if (System.currentTimeMillis() < nextRetryTimeMillis) return;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Error flushing pending writes, will retry", e);
+        }
+    }
+
+    private void enqueue(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        var sheetWrites = pendingWrites.computeIfAbsent(sheetName, name -> new LinkedHashMap<>());
+        valuesByRange.forEach((range, values) -> {
+            // более поздняя запись в ту же ячейку заменяет раннюю и встает в конец очереди
+            if (sheetWrites.remove(range) == null) pendingWritesCount++;
+            sheetWrites.put(range, values);
+        });
+    }
+
+    // неотправленные записи встают перед новыми, чтобы более поздние значения ячеек не были перезаписаны старыми
+    private void requeue(Map<String, LinkedHashMap<RangeRef, List<List<Object>>>> writesToRetry) {
+        synchronized (pendingWrites) {
+            writesToRetry.forEach((sheetName, sheetWrites) -> {
+                var newerWrites = pendingWrites.remove(sheetName);
+                var mergedWrites = new LinkedHashMap<>(sheetWrites);
+                if (newerWrites != null) newerWrites.forEach((range, values) -> {
+                    mergedWrites.remove(range);
+                    mergedWrites.put(range, values);
+                });
+                pendingWrites.put(sheetName, mergedWrites);
+            });
+            pendingWritesCount = pendingWrites.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+
+    // в файле очереди остаются только неотправленные записи
+    private void rewriteWriteLog() {
+        if (writeLog == null) return;
+        synchronized (pendingWrites) {
+            try {
+                if (pendingWritesCount == 0) writeLog.clear();
+                else writeLog.rewrite(pendingWrites);
+            } catch (IOException e) {
+                // старое содержимое файла сохраняется, записи будут отправлены повторно
+                log.error("Error rewriting write-behind log", e);
+            }
+        }
+    }
+
+    // открывает файл очереди и возвращает в очередь записи, принятые до остановки
+    private WriteRecordLog openWriteLog(String writeLogFile) {
+        if (writeLogFile == null || writeLogFile.isBlank()) return null;
+        try {
+            var writeRecordLog = new WriteRecordLog(Path.of(writeLogFile));
+            synchronized (pendingWrites) {
+                var records = writeRecordLog.replay(this::enqueue);
+                if (records > 0) log.info("Write-behind log is replayed: {} records, {} pending writes", records, pendingWritesCount);
+            }
+            return writeRecordLog;
+        } catch (IOException e) {
+            log.error("Error opening write-behind log", e);
+            throw new RuntimeException(e);
+        }
+    }
+}
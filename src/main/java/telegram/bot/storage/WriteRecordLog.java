@@ -0,0 +1,169 @@
+package telegram.bot.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Файл записей в таблицу: каждая запись (лист и значения по диапазонам) дописывается в конец файла
+ * вместе с длиной и контрольной суммой. Общий формат для журнала JOURNAL и очереди отложенной записи.
+ * Недописанный хвост (сбой во время записи) при чтении отрезается.
+ */
+@Slf4j
+class WriteRecordLog {
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2;
+
+    private final Path path;
+    private FileChannel channel;
+
+    WriteRecordLog(Path path) throws IOException {
+        this.path = path;
+        this.channel = open(path);
+    }
+
+    // передает получателю все целые записи по порядку и встает в конец файла; возвращает число записей
+    int replay(BiConsumer<String, Map<RangeRef, List<List<Object>>>> consumer) throws IOException {
+        var size = channel.size();
+        var header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = 0;
+        int records = 0;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            var length = header.getInt();
+            var checksum = header.getInt();
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > size) break;
+            var payload = ByteBuffer.allocate(length);
+            channel.read(payload, position + RECORD_HEADER_SIZE);
+            var crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) break;
+            decode(payload.array(), consumer);
+            position += RECORD_HEADER_SIZE + length;
+            records++;
+        }
+        if (position < size) {
+            log.info("Write log {} tail is truncated at {} of {} bytes", path, position, size);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return records;
+    }
+
+    void append(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) throws IOException {
+        var record = encode(sheetName, valuesByRange);
+        while (record.hasRemaining()) channel.write(record);
+    }
+
+    // сбрасывает дописанные записи на диск (fsync)
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    // обнуляет файл - все записи сохранены в другом месте
+    void clear() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+    }
+
+    // заменяет содержимое файла записями (временный файл + атомарное переименование): при сбое остается старое или новое содержимое
+    void rewrite(Map<String, ? extends Map<RangeRef, List<List<Object>>>> records) throws IOException {
+        var temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (var tempChannel = open(temp)) {
+                for (var record : records.entrySet()) {
+                    var buffer = encode(record.getKey(), record.getValue());
+                    while (buffer.hasRemaining()) tempChannel.write(buffer);
+                }
+                tempChannel.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                channel = open(path);
+                channel.position(channel.size());
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer encode(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            writeString(output, sheetName);
+            output.writeInt(valuesByRange.size());
+            for (var entry : valuesByRange.entrySet()) {
+                writeString(output, entry.getKey().toString());
+                output.writeInt(entry.getValue().size());
+                for (List<Object> row : entry.getValue()) {
+                    output.writeInt(row.size());
+                    for (Object value : row) writeString(output, String.valueOf(value));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        var payload = bytes.toByteArray();
+        var crc = new CRC32();
+        crc.update(payload);
+        var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return record;
+    }
+
+    private static void decode(byte[] payload, BiConsumer<String, Map<RangeRef, List<List<Object>>>> consumer) throws IOException {
+        try (var input = new DataInputStream(new ByteArrayInputStream(payload))) {
+            var sheetName = readString(input);
+            var addressesCount = input.readInt();
+            Map<RangeRef, List<List<Object>>> valuesByRange = new LinkedHashMap<>();
+            for (int addressIndex = 0; addressIndex < addressesCount; addressIndex++) {
+                var range = RangeRef.parse(readString(input));
+                var rowsCount = input.readInt();
+                List<List<Object>> values = new ArrayList<>(rowsCount);
+                for (int rowIndex = 0; rowIndex < rowsCount; rowIndex++) {
+                    var columnsCount = input.readInt();
+                    List<Object> row = new ArrayList<>(columnsCount);
+                    for (int columnIndex = 0; columnIndex < columnsCount; columnIndex++) row.add(readString(input));
+                    values.add(row);
+                }
+                valuesByRange.put(range, values);
+            }
+            consumer.accept(sheetName, valuesByRange);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        var bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
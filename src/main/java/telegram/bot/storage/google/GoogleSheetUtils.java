@@ -1,20 +1,33 @@
 package telegram.bot.storage.google;
 
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.JsonToken;
 import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
 import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesRequest;
 import com.google.api.services.sheets.v4.model.UpdateValuesResponse;
 import com.google.api.services.sheets.v4.model.ValueRange;
 import lombok.extern.slf4j.Slf4j;
 import telegram.bot.config.BotConfiguration;
+import telegram.bot.storage.CellRef;
+import telegram.bot.storage.RangeRef;
+import telegram.bot.storage.RowVisitor;
+import telegram.bot.storage.SheetRange;
+import telegram.bot.storage.SheetWriteRejectedException;
 import telegram.bot.storage.StorageUtils;
 
 import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 @Slf4j
@@ -22,69 +35,149 @@ public class GoogleSheetUtils implements StorageUtils {
     private final Sheets sheetService;
     private final Drive driveService;
 
+    // квоты Sheets API считаются отдельно для чтения и записи, у Drive API своя квота
+    private final TokenBucketRateLimiter sheetsReadRateLimiter;
+    private final TokenBucketRateLimiter sheetsWriteRateLimiter;
+    private final TokenBucketRateLimiter driveRateLimiter;
+
+    // позиция в ленте изменений Drive и последнее известное время изменения таблицы
+    private String changesPageToken;
+    private LocalDateTime sheetLastUpdateTime;
+
     public GoogleSheetUtils(GoogleConnection googleConnection) {
         sheetService = googleConnection.getSheetService();
         driveService = googleConnection.getDriveService();
+        sheetsReadRateLimiter = new TokenBucketRateLimiter(BotConfiguration.getGoogleApiSheetsReadRequestsPerMinute());
+        sheetsWriteRateLimiter = new TokenBucketRateLimiter(BotConfiguration.getGoogleApiSheetsWriteRequestsPerMinute());
+        driveRateLimiter = new TokenBucketRateLimiter(BotConfiguration.getGoogleApiDriveRequestsPerMinute());
     }
 
     @Override
-    public boolean writeCellValue(String sheetName, String cellAddress, String cellValue) {
-        return writesValues(sheetName, cellAddress, List.of(List.of(cellValue)));
+    public boolean writeCellValue(String sheetName, CellRef cell, String cellValue) {
+        return writesValues(sheetName, RangeRef.of(cell), List.of(List.of(cellValue)));
     }
 
     @Override
-    public boolean writesValues(String sheetName, String cellAddress, List<List<Object>> values) {
+    public boolean writesValues(String sheetName, RangeRef cellRange, List<List<Object>> values) {
         try {
-            var range = sheetName + "!" + cellAddress;
+            var range = sheetName + "!" + cellRange;
             var body = new ValueRange().setValues(values);
+            sheetsWriteRateLimiter.acquire();
             UpdateValuesResponse result = sheetService.spreadsheets().values()
                     .update(BotConfiguration.getGoogleSheetId(), range, body)
                     .setValueInputOption("RAW")
                     .execute();
-            pause();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw toWriteException(e);
             //return false;
         }
         return true;
     }
 
+    @Override
+    public boolean writeValuesBatch(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        if (valuesByRange.isEmpty()) return true;
+        try {
+            var data = valuesByRange.entrySet().stream()
+                    .map(entry -> new ValueRange().setRange(sheetName + "!" + entry.getKey()).setValues(entry.getValue()))
+                    .toList();
+            sheetsWriteRateLimiter.acquire();
+            sheetService.spreadsheets().values()
+                    .batchUpdate(BotConfiguration.getGoogleSheetId(), new BatchUpdateValuesRequest()
+                            .setValueInputOption("RAW")
+                            .setData(data))
+                    .execute();
+        } catch (IOException e) {
+            throw toWriteException(e);
+        }
+        return true;
+    }
+
     @Override
     public List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd) {
         return readValuesList(sheetName, rangeBegin, rangeEnd, 0);
     }
 
+    // ответ 4xx, кроме авторизации, доступа, таймаута и квоты (429), - ошибка самой записи, повтор ее не исправит;
+    // остальное (сеть, 5xx, квота) - временные ошибки
+    private static RuntimeException toWriteException(IOException e) {
+        if (e instanceof HttpResponseException responseException) {
+            var statusCode = responseException.getStatusCode();
+            if (statusCode >= 400 && statusCode < 500 && statusCode != 401 && statusCode != 403 && statusCode != 408 && statusCode != 429)
+                return new SheetWriteRejectedException("Write is rejected with status " + statusCode, e);
+        }
+        return new RuntimeException(e);
+    }
+
+    @Override
+    public List<List<List<String>>> readValuesRanges(List<SheetRange> ranges) {
+        return RowVisitor.collect(ranges.size(), visitor -> visitValuesRanges(ranges, visitor));
+    }
+
+    // ответ batchGet разбирается потоково: строки передаются получателю по мере чтения JSON,
+    // без промежуточного дерева объектов
     @Override
-    public List<List<String>> readValuesRange(String sheetName, String rangeBegin, String rangeEnd) {
-        List<List<String>> values = new LinkedList<>();
+    public void visitValuesRanges(List<SheetRange> ranges, RowVisitor visitor) {
         try {
-            var range = sheetName + "!" + rangeBegin + ":" + rangeEnd;
-
-            var objectsInTheRange = Optional
-                    .ofNullable(
-                            sheetService.spreadsheets()
-                                    .values()
-                                    .get(BotConfiguration.getGoogleSheetId(), range)
-                                    .execute()
-                                    .getValues())
-                    .orElse(Collections.emptyList());
-            objectsInTheRange
-                    .forEach(currentRowObject -> {
-                        var rowStringList = new LinkedList<String>();
-                        currentRowObject.forEach(currentCellObject -> rowStringList.add(Optional.ofNullable(currentCellObject).orElse("").toString()));
-                        values.add(rowStringList);
-                    });
+            sheetsReadRateLimiter.acquire();
+            var response = sheetService.spreadsheets()
+                    .values()
+                    .batchGet(BotConfiguration.getGoogleSheetId())
+                    .setRanges(ranges.stream().map(SheetRange::toString).toList())
+                    .executeUnparsed();
+            try (var parser = sheetService.getJsonFactory().createJsonParser(response.getContent(), response.getContentCharset())) {
+                parseValueRanges(parser, visitor);
+            } finally {
+                response.disconnect();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        pause();
-        return values;
+    }
+
+    // {"spreadsheetId": ..., "valueRanges": [{"range": ..., "values": [[...], ...]}, ...]}
+    private void parseValueRanges(JsonParser parser, RowVisitor visitor) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) return;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (!"valueRanges".equals(fieldName)) {
+                parser.skipChildren();
+                continue;
+            }
+            int rangeIndex = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) parseValueRange(parser, rangeIndex++, visitor);
+        }
+    }
+
+    private void parseValueRange(JsonParser parser, int rangeIndex, RowVisitor visitor) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (!"values".equals(fieldName)) {
+                parser.skipChildren();
+                continue;
+            }
+            int rowIndex = 0;
+            while (parser.nextToken() == JsonToken.START_ARRAY) {
+                List<String> row = new ArrayList<>();
+                JsonToken cellToken;
+                while ((cellToken = parser.nextToken()) != JsonToken.END_ARRAY)
+                    row.add(cellToken == JsonToken.VALUE_NULL ? "" : parser.getText());
+                visitor.visitRow(rangeIndex, rowIndex++, row);
+            }
+        }
     }
 
     @Override
     public LocalDateTime getSheetLastUpdateTime() {
+        return BotConfiguration.isGoogleDriveChangesFeed() ? getSheetLastUpdateTimeFromChanges() : getSheetModifiedTime();
+    }
+
+    private LocalDateTime getSheetModifiedTime() {
         LocalDateTime modifiedLocalDateTime;
         try {
+            driveRateLimiter.acquire();
             var modifiedDateTimeEpoch = driveService
                     .files()
                     .get(BotConfiguration.getGoogleSheetId())
@@ -100,25 +193,53 @@ public class GoogleSheetUtils implements StorageUtils {
         return modifiedLocalDateTime;
     }
 
+    // вместо modifiedTime файла читает ленту изменений Drive начиная с сохраненного pageToken:
+    // пока изменений нет, ответ пустой, а время последнего изменения таблицы берется из запомненного значения
+    private synchronized LocalDateTime getSheetLastUpdateTimeFromChanges() {
+        try {
+            if (Objects.isNull(changesPageToken)) {
+                driveRateLimiter.acquire();
+                changesPageToken = driveService.changes().getStartPageToken().execute().getStartPageToken();
+                sheetLastUpdateTime = getSheetModifiedTime();
+                return sheetLastUpdateTime;
+            }
+            var pageToken = changesPageToken;
+            while (Objects.nonNull(pageToken)) {
+                driveRateLimiter.acquire();
+                var changeList = driveService.changes()
+                        .list(pageToken)
+                        .setFields("nextPageToken,newStartPageToken,changes(fileId,time)")
+                        .execute();
+                for (Change change : Optional.ofNullable(changeList.getChanges()).orElse(Collections.emptyList())) {
+                    if (BotConfiguration.getGoogleSheetId().equals(change.getFileId()) && Objects.nonNull(change.getTime())) {
+                        var changeTime = Instant.ofEpochMilli(change.getTime().getValue()).atZone(ZoneId.systemDefault()).toLocalDateTime();
+                        if (changeTime.isAfter(sheetLastUpdateTime)) sheetLastUpdateTime = changeTime;
+                    }
+                }
+                if (Objects.nonNull(changeList.getNewStartPageToken())) changesPageToken = changeList.getNewStartPageToken();
+                pageToken = changeList.getNextPageToken();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return sheetLastUpdateTime;
+    }
+
+    public TokenBucketRateLimiter getSheetsReadRateLimiter() {
+        return sheetsReadRateLimiter;
+    }
+
+    public TokenBucketRateLimiter getSheetsWriteRateLimiter() {
+        return sheetsWriteRateLimiter;
+    }
+
+    public TokenBucketRateLimiter getDriveRateLimiter() {
+        return driveRateLimiter;
+    }
+
     private List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd, int index) {
         List<String> valuesList = new LinkedList<>();
         readValuesRange(sheetName, rangeBegin, rangeEnd).forEach(values -> valuesList.add(!values.isEmpty() && values.size() >= index + 1 ? values.get(index) : ""));
         return valuesList;
     }
-
-    private void pause() {
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(BotConfiguration.getGoogleApiPauseLong());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        });
-        thread.start();
-        try {
-            thread.join();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-    }
 }
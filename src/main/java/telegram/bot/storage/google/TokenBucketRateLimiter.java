@@ -0,0 +1,69 @@
+package telegram.bot.storage.google;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничитель частоты запросов к Google API по схеме token bucket.
+ * Ведро небольшое (десятая часть минутной квоты) и пополняется так, чтобы ведро плюс пополнение за минуту
+ * не превышали квоту: в любые 60 секунд уходит не больше requestsPerMinute запросов. Запрос ждет, только если ведро пусто.
+ */
+public class TokenBucketRateLimiter {
+    private static final int BURST_QUOTA_DIVISOR = 10;
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(long requestsPerMinute) {
+        this(requestsPerMinute, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(long requestsPerMinute, LongSupplier nanoClock) {
+        if (requestsPerMinute <= 0) throw new IllegalArgumentException("requestsPerMinute must be positive");
+        this.capacity = Math.max(1, requestsPerMinute / BURST_QUOTA_DIVISOR);
+        // при квоте в один запрос ведро и пополнение не поделить, пополняем одним токеном в минуту
+        this.tokensPerNano = Math.max(1, requestsPerMinute - capacity) / (double) TimeUnit.MINUTES.toNanos(1);
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    // берет токен из ведра; если ведро пусто - ждет, пока накопится токен
+    public void acquire() {
+        var waitNanos = reserve();
+        if (waitNanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    // текущее число доступных токенов
+    public synchronized double getAvailableTokens() {
+        refill();
+        return Math.max(tokens, 0);
+    }
+
+    public double getCapacity() {
+        return capacity;
+    }
+
+    // токен списывается сразу (баланс может уйти в минус), ожидающие потоки выстраиваются в очередь по времени;
+    // возвращает, сколько ждать до запроса
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    private void refill() {
+        var now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
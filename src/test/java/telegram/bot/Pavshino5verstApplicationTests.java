@@ -32,6 +32,8 @@ class Pavshino5verstApplicationTests {
     static void init() {
         ApplicationContext ctx = new AnnotationConfigApplicationContext(BotConfiguration.class);
         telegramBotStorage = ctx.getBean(TelegramBotStorage.class);
+        // хранилище загружается в фоне - проверки начинаем после загрузки
+        telegramBotStorage.getReadiness().join();
     }
 
     @Test
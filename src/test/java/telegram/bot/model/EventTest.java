@@ -0,0 +1,72 @@
+package telegram.bot.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventTest {
+    private static final LocalDate EVENT_DATE = LocalDate.of(2023, 11, 11);
+    private static final List<String> ROLES = List.of("Координатор", "Секундомер", "Сканер");
+
+    private final Volunteer ivan = Volunteer.builder().name("Иван").surname("Иванов").tgUserName("ivan").build();
+    private final Volunteer petr = Volunteer.builder().name("Петр").surname("Петров").tgUserName("petr").build();
+
+    @Test
+    void volunteerIdsRoundTripWithFreeSlots() {
+        var roster = Roster.of(2, ROLES, Set.of("Координатор"), List.of(ivan, petr));
+        assertThat(roster.getVolunteerId(null), equalTo(Roster.NO_VOLUNTEER));
+        assertThat(roster.getVolunteer(Roster.NO_VOLUNTEER), nullValue());
+
+        var event = Event.builder().eventDate(EVENT_DATE).columnNumber(2).roster(roster)
+                .volunteerIds(new int[]{roster.getVolunteerId(ivan), Roster.NO_VOLUNTEER, roster.getVolunteerId(petr)}).build();
+
+        assertThat(event.getVolunteerAt(0), sameInstance(ivan));
+        assertThat(event.getVolunteerAt(1), nullValue());
+        assertThat(event.getVolunteerAt(2), sameInstance(petr));
+        assertThat(event.getParticipants().stream().map(Participation::getVolunteer).toList(), equalTo(Arrays.asList(ivan, null, petr)));
+        assertThat(event.getParticipants().stream().map(Participation::getSheetRowNumber).toList(), equalTo(List.of(2, 3, 4)));
+        assertThat(event.getParticipants().stream().map(Participation::getEventRole).toList(), equalTo(ROLES));
+        assertThat(event.getVacantSlots().stream().map(Participation::getEventRole).toList(), equalTo(List.of("Секундомер")));
+        assertThat(event.getOccupiedSlots().size(), equalTo(2));
+        assertThat(event.getSlot(1), nullValue());
+    }
+
+    @Test
+    void emptyEventHasOnlyFreeSlots() {
+        var roster = Roster.of(2, ROLES, Set.of("Координатор"), List.of());
+        var event = Event.builder().eventDate(EVENT_DATE).columnNumber(2).roster(roster).build();
+
+        assertThat(event.getParticipants().stream().map(Participation::getVolunteer).toList(), equalTo(Arrays.asList(null, null, null)));
+        assertThat(event.getMainVacantSlots().stream().map(Participation::getEventRole).toList(), equalTo(List.of("Координатор")));
+        assertThat(event.getOtherVacantSlots().stream().map(Participation::getEventRole).toList(), equalTo(List.of("Секундомер", "Сканер")));
+    }
+
+    @Test
+    void withVolunteerCopiesEventAndRoster() {
+        var roster = Roster.of(2, ROLES, Set.of("Координатор"), List.of(ivan));
+        var event = Event.builder().eventDate(EVENT_DATE).columnNumber(2).roster(roster)
+                .volunteerIds(new int[]{roster.getVolunteerId(ivan), Roster.NO_VOLUNTEER, Roster.NO_VOLUNTEER}).build();
+
+        // новый волонтер попадает только в новый состав
+        var taken = event.withVolunteer(3, petr);
+        assertThat(taken.getVolunteerAt(1), sameInstance(petr));
+        assertThat(taken.getVolunteerAt(0), sameInstance(ivan));
+        assertThat(event.getVolunteerAt(1), nullValue());
+        assertThrows(IllegalArgumentException.class, () -> roster.getVolunteerId(petr));
+
+        // освобождение позиции - null в той же копии состава
+        var released = taken.withVolunteer(2, null);
+        assertThat(released.getParticipants().stream().map(Participation::getVolunteer).toList(), equalTo(Arrays.asList(null, petr, null)));
+        assertThat(released.getRoster(), sameInstance(taken.getRoster()));
+        assertThat(taken.getVolunteerAt(0), sameInstance(ivan));
+
+        assertThat(event.withVolunteer(5, petr), nullValue());
+    }
+}
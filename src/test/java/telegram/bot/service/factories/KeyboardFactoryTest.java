@@ -0,0 +1,45 @@
+package telegram.bot.service.factories;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import telegram.bot.model.Event;
+import telegram.bot.model.Roster;
+import telegram.bot.model.Volunteer;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class KeyboardFactoryTest {
+    private static final LocalDate EVENT_DATE = LocalDate.of(2023, 11, 11);
+
+    private final KeyboardFactory keyboardFactory = new KeyboardFactory();
+
+    @Test
+    void vacantRolesMarkupIsCachedPerGeneration() {
+        var roster = Roster.of(2, List.of("Координатор", "Секундомер"), Set.of("Координатор"), List.of());
+        var event = Event.builder().eventDate(EVENT_DATE).columnNumber(2).roster(roster).build();
+
+        var mainPage = keyboardFactory.getVacantRolesMarkup(event.getVacancies(), false);
+        assertThat(keyboardFactory.getVacantRolesMarkup(event.getVacancies(), false), sameInstance(mainPage));
+        assertThat(buttonTexts(mainPage), contains(endsWith("Координатор"), endsWith(">>>")));
+
+        // позицию заняли - новое поколение события, клавиатура строится заново
+        var volunteer = Volunteer.builder().name("Иван").surname("Иванов").tgUserName("ivan").build();
+        var changedEvent = event.withVolunteer(2, volunteer);
+        assertThat(changedEvent.getGeneration(), not(equalTo(event.getGeneration())));
+
+        var changedMainPage = keyboardFactory.getVacantRolesMarkup(changedEvent.getVacancies(), false);
+        assertThat(changedMainPage, not(sameInstance(mainPage)));
+        assertThat(buttonTexts(changedMainPage), contains(endsWith("Секундомер")));
+        assertThat(keyboardFactory.getVacantRolesMarkup(changedEvent.getVacancies(), false), sameInstance(changedMainPage));
+    }
+
+    private static List<String> buttonTexts(InlineKeyboardMarkup markup) {
+        return markup.getKeyboard().stream().flatMap(List::stream).map(InlineKeyboardButton::getText).toList();
+    }
+}
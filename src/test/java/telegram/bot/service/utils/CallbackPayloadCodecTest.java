@@ -0,0 +1,43 @@
+package telegram.bot.service.utils;
+
+import org.junit.jupiter.api.Test;
+import telegram.bot.model.CallbackPayload;
+import telegram.bot.service.enums.ButtonType;
+import telegram.bot.service.enums.UserChoiceType;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CallbackPayloadCodecTest {
+    @Test
+    void encodeAndDecode() {
+        var payload = CallbackPayload.builder()
+                .buttonType(ButtonType.PART_CHOICE)
+                .date(LocalDate.of(2024, 6, 15))
+                .sheetRowNumber(42)
+                .userChoice(UserChoiceType.NO)
+                .build();
+
+        var data = CallbackPayloadCodec.encode(payload);
+
+        assertThat(data.length(), lessThanOrEqualTo(64));
+        assertThat(CallbackPayloadCodec.decode(data), equalTo(payload));
+    }
+
+    @Test
+    void encodeAndDecodeEmptyFields() {
+        var payload = CallbackPayload.builder().buttonType(ButtonType.REG_CHOICE).build();
+
+        assertThat(CallbackPayloadCodec.decode(CallbackPayloadCodec.encode(payload)), equalTo(payload));
+    }
+
+    @Test
+    void rejectUnknownData() {
+        assertThrows(IllegalArgumentException.class, () -> CallbackPayloadCodec.decode("{\"b\":\"SHOW_PART\",\"d\":\"15.06.2024\"}"));
+        assertThrows(IllegalArgumentException.class, () -> CallbackPayloadCodec.decode("z-00000000"));
+    }
+}
@@ -0,0 +1,80 @@
+package telegram.bot.service.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+
+class KeyedSerialExecutorTest {
+
+    @Test
+    void tasksOfOneKeyRunInOrder() throws Exception {
+        // маленькие пул и очередь: часть задач выполняет вызывающий поток
+        var executor = new KeyedSerialExecutor<Integer>("test", 2, 2);
+        Map<Integer, List<Integer>> runs = new HashMap<>();
+        var done = new CountDownLatch(300);
+        for (int task = 0; task < 100; task++)
+            for (int key = 0; key < 3; key++) {
+                var taskKey = key;
+                var taskNumber = task;
+                executor.execute(key, () -> {
+                    synchronized (runs) {
+                        runs.computeIfAbsent(taskKey, k -> new ArrayList<>()).add(taskNumber);
+                    }
+                    done.countDown();
+                });
+            }
+
+        assertThat(done.await(10, TimeUnit.SECONDS), equalTo(true));
+        var expected = IntStream.range(0, 100).boxed().toList();
+        for (int key = 0; key < 3; key++) assertThat(runs.get(key), equalTo(expected));
+        executor.shutdown();
+    }
+
+    @Test
+    void callerRunsOnWorkerKeepsKeyOrder() throws Exception {
+        var executor = new KeyedSerialExecutor<String>("test", 1, 1);
+        List<String> runs = Collections.synchronizedList(new ArrayList<>());
+        var release = new CountDownLatch(1);
+        var done = new CountDownLatch(3);
+        Map<String, String> threadNames = new HashMap<>();
+
+        // единственный поток занят первой задачей ключа "x", вторая ждет ее завершения
+        executor.execute("x", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            runs.add("x1");
+            done.countDown();
+        });
+        executor.execute("x", () -> {
+            runs.add("x2");
+            synchronized (threadNames) {
+                threadNames.put("x2", Thread.currentThread().getName());
+            }
+            done.countDown();
+        });
+        // задача другого ключа заполняет очередь пула
+        executor.execute("y", () -> {
+            runs.add("y1");
+            done.countDown();
+        });
+
+        // после первой задачи "x" очередь полна - вторая выполняется сразу в потоке пула, по порядку ключа
+        release.countDown();
+        assertThat(done.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(runs, equalTo(List.of("x1", "x2", "y1")));
+        synchronized (threadNames) {
+            assertThat(threadNames.get("x2"), startsWith("test-"));
+        }
+        executor.shutdown();
+    }
+}
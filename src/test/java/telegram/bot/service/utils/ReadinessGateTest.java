@@ -0,0 +1,64 @@
+package telegram.bot.service.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+class ReadinessGateTest {
+    private final List<String> dispatched = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> rejected = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void pendingItemsAreDispatchedInOrderWhenReady() {
+        var readiness = new CompletableFuture<Void>();
+        var gate = new ReadinessGate<String>(readiness, 2, dispatched::add, rejected::add);
+
+        gate.accept("a");
+        gate.accept("b");
+        assertThat(dispatched, empty());
+
+        readiness.complete(null);
+        gate.accept("c");
+        assertThat(dispatched, equalTo(List.of("a", "b", "c")));
+        assertThat(rejected, empty());
+    }
+
+    @Test
+    void readinessFailureStillAnswersEveryItem() {
+        var readiness = new CompletableFuture<Void>();
+        var gate = new ReadinessGate<String>(readiness, 2, dispatched::add, rejected::add);
+
+        gate.accept("a");
+        gate.accept("b");
+        readiness.completeExceptionally(new RuntimeException("storage is not loaded"));
+        // и придержанные, и пришедшие после сбоя получают отказ
+        gate.accept("c");
+        assertThat(rejected, equalTo(List.of("a", "b", "c")));
+        assertThat(dispatched, empty());
+    }
+
+    @Test
+    void fullQueueWaitsForReadinessFailureAndAnswers() throws Exception {
+        var readiness = new CompletableFuture<Void>();
+        var gate = new ReadinessGate<String>(readiness, 1, dispatched::add, rejected::add);
+
+        gate.accept("a");
+        // очередь заполнена - поставщик ждет окончания загрузки
+        var waiting = CompletableFuture.runAsync(() -> gate.accept("b"));
+        Thread.sleep(200);
+        assertThat(waiting.isDone(), equalTo(false));
+
+        readiness.completeExceptionally(new RuntimeException("storage is not loaded"));
+        waiting.get(10, TimeUnit.SECONDS);
+        assertThat(rejected, equalTo(List.of("a", "b")));
+        assertThat(dispatched, empty());
+    }
+}
@@ -0,0 +1,33 @@
+package telegram.bot.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CellRefTest {
+    @Test
+    void parseR1C1() {
+        assertThat(CellRef.parse("R12C34"), equalTo(CellRef.of(12, 34)));
+        assertThat(CellRef.parse("R7"), equalTo(CellRef.row(7)));
+        assertThat(CellRef.parse("C3"), equalTo(CellRef.column(3)));
+        assertThat(RangeRef.parse("R10C1:R10C17"), equalTo(RangeRef.of(CellRef.of(10, 1), CellRef.of(10, 17))));
+        assertThat(RangeRef.parse("R10C1:R10C17").toString(), equalTo("R10C1:R10C17"));
+    }
+
+    @Test
+    void parseA1() {
+        assertThat(CellRef.parseA1("AB12"), equalTo(CellRef.of(12, 28)));
+        assertThat(CellRef.parseA1("$C$5"), equalTo(CellRef.of(5, 3)));
+        assertThat(CellRef.of(12, 28).toA1(), equalTo("AB12"));
+        assertThat(CellRef.column(26).toA1(), equalTo("Z"));
+    }
+
+    @Test
+    void rejectUnsupportedAddress() {
+        assertThrows(IllegalArgumentException.class, () -> CellRef.parse("B3"));
+        assertThrows(IllegalArgumentException.class, () -> CellRef.parse("R0C1"));
+        assertThrows(IllegalArgumentException.class, () -> CellRef.parse("RC"));
+    }
+}
@@ -0,0 +1,92 @@
+package telegram.bot.storage;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Таблица в памяти для тестов: запоминает записанные значения по адресам и отдает их при чтении, время изменения таблицы
+ * сдвигается при каждой записи, следующим записям можно подложить временные ошибки, адресам - окончательный отказ.
+ */
+class FakeStorageUtils implements StorageUtils {
+    final Map<String, Map<RangeRef, List<List<Object>>>> writes = new LinkedHashMap<>();
+    // ошибки для следующих вызовов записи, по одной на вызов
+    final Deque<RuntimeException> writeFailures = new ArrayDeque<>();
+    // адреса, запись в которые таблица отвергает окончательно
+    final Set<RangeRef> rejectedRanges = new HashSet<>();
+    // лист -> строка -> колонка -> значение (нумерация с 0), как их видит чтение
+    private final Map<String, TreeMap<Integer, TreeMap<Integer, String>>> cells = new HashMap<>();
+    private LocalDateTime sheetLastUpdateTime = LocalDateTime.of(2023, 11, 11, 9, 0);
+    // запрос времени изменения таблицы ждет, пока защелку не откроют
+    volatile CountDownLatch sheetLastUpdateTimeGate = new CountDownLatch(0);
+
+    @Override
+    public boolean writeCellValue(String sheetName, CellRef cell, String cellValue) {
+        return writesValues(sheetName, RangeRef.of(cell), List.of(List.of(cellValue)));
+    }
+
+    @Override
+    public boolean writesValues(String sheetName, RangeRef range, List<List<Object>> values) {
+        return writeValuesBatch(sheetName, Map.of(range, values));
+    }
+
+    @Override
+    public synchronized boolean writeValuesBatch(String sheetName, Map<RangeRef, List<List<Object>>> valuesByRange) {
+        var failure = writeFailures.poll();
+        if (failure != null) throw failure;
+        if (valuesByRange.keySet().stream().anyMatch(rejectedRanges::contains))
+            throw new SheetWriteRejectedException("Write is rejected with status 400", null);
+        writes.computeIfAbsent(sheetName, name -> new LinkedHashMap<>()).putAll(valuesByRange);
+        var sheet = cells.computeIfAbsent(sheetName, name -> new TreeMap<>());
+        valuesByRange.forEach((range, values) -> {
+            for (int i = 0; i < values.size(); i++)
+                for (int j = 0; j < values.get(i).size(); j++)
+                    sheet.computeIfAbsent(Math.max(range.getBegin().getRow(), 1) - 1 + i, row -> new TreeMap<>())
+                            .put(Math.max(range.getBegin().getColumn(), 1) - 1 + j, String.valueOf(values.get(i).get(j)));
+        });
+        editByHand();
+        return true;
+    }
+
+    @Override
+    public List<String> readValuesList(String sheetName, String rangeBegin, String rangeEnd) {
+        return List.of();
+    }
+
+    @Override
+    public synchronized List<List<List<String>>> readValuesRanges(List<SheetRange> ranges) {
+        return RowVisitor.collect(ranges.size(), visitor -> {
+            for (int rangeIndex = 0; rangeIndex < ranges.size(); rangeIndex++) {
+                var collector = new StreamingExcelReader.RangeCollector(ranges.get(rangeIndex), rangeIndex, visitor);
+                cells.getOrDefault(ranges.get(rangeIndex).getSheetName(), new TreeMap<>())
+                        .subMap(collector.getFirstRowIndex(), true, collector.getLastRowIndex(), true)
+                        .forEach((rowIndex, row) -> row.forEach((columnIndex, value) -> {
+                            if (!value.isEmpty()) collector.accept(rowIndex, columnIndex, value);
+                        }));
+                collector.finish();
+            }
+        });
+    }
+
+    @Override
+    public LocalDateTime getSheetLastUpdateTime() {
+        try {
+            sheetLastUpdateTimeGate.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        synchronized (this) {
+            return sheetLastUpdateTime;
+        }
+    }
+
+    // изменение таблицы не через бота
+    synchronized void editByHand() {
+        sheetLastUpdateTime = sheetLastUpdateTime.plusSeconds(1);
+    }
+
+    synchronized Object getValue(String sheetName, String cellAddress) {
+        var values = writes.getOrDefault(sheetName, Map.of()).get(RangeRef.parse(cellAddress));
+        return values == null ? null : values.get(0).get(0);
+    }
+}
@@ -0,0 +1,52 @@
+package telegram.bot.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class JournalStorageUtilsTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void replayJournalAfterRestart() throws Exception {
+        var journal = new JournalStorageUtils(tempDir.toString(), 1000, 1024 * 1024);
+        journal.writesValues("Контакты", "R2C1:R2C3", List.of(List.of("Иван Иванов", "@ivan", "123456789")));
+        journal.writeCellValue("Волонтеры", "R3C2", "Иван Иванов");
+        journal.writeCellValue("Волонтеры", "R3C2", "");
+        journal.writeCellValue("Волонтеры", "R4C2", "Петр Петров");
+        journal.sync();
+        // недописанная запись в конце журнала (сбой во время записи) при восстановлении отбрасывается
+        Files.write(tempDir.resolve("journal.log"), new byte[]{0, 0, 0, 42, 1}, StandardOpenOption.APPEND);
+
+        var restored = new JournalStorageUtils(tempDir.toString(), 1000, 1024 * 1024);
+        assertThat(restored.readValuesRange("Контакты", "R2C1", "C3"), equalTo(List.of(List.of("Иван Иванов", "@ivan", "123456789"))));
+        assertThat(restored.readValuesRange("Волонтеры", "R3C2", "C2"), equalTo(List.of(List.of(), List.of("Петр Петров"))));
+
+        restored.compact();
+        var compacted = new JournalStorageUtils(tempDir.toString(), 1000, 1024 * 1024);
+        assertThat(compacted.readValuesList("Волонтеры", "R4C2", "C2"), equalTo(List.of("Петр Петров")));
+    }
+
+    @Test
+    void exportClearsCellsClearedInJournal() throws Exception {
+        var journal = new JournalStorageUtils(tempDir.resolve("journal").toString(), 1000, 1024 * 1024);
+        journal.writesValues("Волонтеры", "R1C1", List.of(List.of("Роль", "11.11.2023"), List.of("Координатор", "Иван Иванов"), List.of("Секундомер", "Петр Петров")));
+        var report = new JournalStorageUtils(tempDir.resolve("report").toString(), 1000, 1024 * 1024);
+        journal.exportTo(report);
+
+        // в журнале строку и ячейку очистили - выгрузка стирает их и в таблице
+        journal.writesValues("Волонтеры", "R2C2", List.of(List.of(""), List.of("")));
+        journal.writesValues("Волонтеры", "R3C1", List.of(List.of("")));
+        journal.exportTo(report);
+        assertThat(report.readValuesRanges(List.of(SheetRange.wholeSheet("Волонтеры"))).get(0),
+                equalTo(List.of(List.of("Роль", "11.11.2023"), List.of("Координатор"))));
+    }
+}
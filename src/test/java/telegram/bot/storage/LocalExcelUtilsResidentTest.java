@@ -0,0 +1,49 @@
+package telegram.bot.storage;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class LocalExcelUtilsResidentTest {
+    // фоновый сброс в тесте не мешает - книга сбрасывается явно
+    private static final long FLUSH_INTERVAL_ms = 3_600_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void residentWritesAreReadBackAfterFlushAndReopen() throws Exception {
+        var path = tempDir.resolve("storage.xlsx");
+        try (var workbook = new XSSFWorkbook(); var outputStream = new FileOutputStream(path.toFile())) {
+            workbook.createSheet("Волонтеры").createRow(0).createCell(0).setCellValue("Роль");
+            workbook.write(outputStream);
+        }
+
+        var resident = new LocalExcelUtils(path.toString(), FLUSH_INTERVAL_ms, 1000);
+        assertThat(resident.writeCellValue("Волонтеры", "R2C2", "Иван Иванов"), equalTo(true));
+        assertThat(resident.writesValues("Волонтеры", "R3C1", List.of(List.of("Секундомер", "Петр Петров"))), equalTo(true));
+        // до сброса изменения видны только резидентной книге
+        assertThat(resident.readValuesRange("Волонтеры", "R2C2", "R2C2"), equalTo(List.of(List.of("Иван Иванов"))));
+        assertThat(new LocalExcelUtils(path.toString()).readValuesRange("Волонтеры", "R2C2", "R2C2"), equalTo(List.of()));
+
+        resident.flush();
+        // файл заменен новой книгой через временный файл, временных файлов не осталось
+        try (var files = Files.list(tempDir)) {
+            assertThat(files.toList(), equalTo(List.of(path)));
+        }
+        // потоковое чтение сохраненного файла
+        assertThat(new LocalExcelUtils(path.toString()).readValuesRanges(List.of(SheetRange.wholeSheet("Волонтеры"))).get(0),
+                equalTo(List.of(List.of("Роль"), List.of("", "Иван Иванов"), List.of("Секундомер", "Петр Петров"))));
+        // новая резидентная книга открывается из сохраненного файла
+        assertThat(new LocalExcelUtils(path.toString(), FLUSH_INTERVAL_ms, 1000).readValuesRange("Волонтеры", "R3C1", "R3C2"),
+                equalTo(List.of(List.of("Секундомер", "Петр Петров"))));
+    }
+}
@@ -0,0 +1,62 @@
+package telegram.bot.storage;
+
+import telegram.bot.config.BotConfiguration;
+import telegram.bot.model.Participation;
+import telegram.bot.model.Volunteer;
+import telegram.bot.service.utils.AESUtil;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Таблица для тестов Storage: настройки бота (синхронизация с таблицей выключена) и небольшая таблица
+ * с двумя контактами, двумя ролями и одним событием.
+ */
+class StorageFixture {
+    static final String VOLUNTEERS = "Волонтеры";
+    static final String CONTACTS = "Контакты";
+    static final String ROLES = "Роли";
+    static final LocalDate EVENT_DATE = LocalDate.of(2023, 11, 11);
+
+    static {
+        new BotConfiguration("JOURNAL", "0", "-1", "false", "1000", "50", "5000", "100", "journal", "200", "16", "0", "-1", "1000",
+                "test", "", "60", "60", "600", "", VOLUNTEERS, "Организатор", CONTACTS, ROLES,
+                "2", "1", "7", "2", "1", "2", "1", "0", "-1", "pass", "salt");
+    }
+
+    // роли в строках 2 и 3, событие в колонке 2
+    static FakeStorageUtils newSheet() {
+        var sheet = new FakeStorageUtils();
+        sheet.writesValues(CONTACTS, "R2C1", List.of(List.of("Иван Иванов", "ivan"), List.of("Петр Петров", "petr")));
+        sheet.writesValues(ROLES, "R1C1", List.of(List.of("Координатор")));
+        sheet.writesValues(VOLUNTEERS, "R1C1", List.of(List.of("Роль", EVENT_DATE.format(BotConfiguration.DATE_FORMATTER))));
+        sheet.writesValues(VOLUNTEERS, "R2C1", List.of(List.of("Координатор"), List.of("Секундомер")));
+        return sheet;
+    }
+
+    // загруженное хранилище поверх таблицы
+    static Storage newStorage(StorageUtils sheetUtils) {
+        return newStorage(sheetUtils, null);
+    }
+
+    // хранилище с быстрым стартом из файла; после возврата кэш готов к чтению, сверка с таблицей может еще идти
+    static Storage newStorage(StorageUtils sheetUtils, WarmStartSnapshotFile warmStartSnapshotFile) {
+        var storage = new Storage() {
+            {
+                storageUtils = sheetUtils;
+                aesUtil = new AESUtil();
+                warmStartFile = warmStartSnapshotFile;
+            }
+        };
+        storage.startAsync().join();
+        return storage;
+    }
+
+    static Participation participation(Volunteer volunteer, int sheetRowNumber) {
+        return Participation.builder()
+                .eventDate(EVENT_DATE)
+                .sheetRowNumber(sheetRowNumber)
+                .volunteer(volunteer)
+                .build();
+    }
+}
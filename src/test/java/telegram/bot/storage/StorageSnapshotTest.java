@@ -0,0 +1,52 @@
+package telegram.bot.storage;
+
+import org.junit.jupiter.api.Test;
+import telegram.bot.model.Event;
+import telegram.bot.model.Roster;
+import telegram.bot.model.Volunteer;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StorageSnapshotTest {
+    private static final LocalDate EVENT_DATE = LocalDate.of(2023, 11, 11);
+
+    @Test
+    void publishedSnapshotDoesNotChange() {
+        var ivan = Volunteer.builder().name("Иван").surname("Иванов").tgUserName("ivan").build();
+        var roster = Roster.of(2, List.of("Координатор", "Секундомер"), Set.of("Координатор"), List.of(ivan));
+        var event = Event.builder().eventDate(EVENT_DATE).columnNumber(2).roster(roster).build();
+        var snapshot = StorageSnapshot.empty().withEvent(event);
+
+        var updated = snapshot.withEvent(event.withVolunteer(2, ivan)).withVolunteer(ivan);
+
+        // в новом снимке позиция занята и контакт есть, старый снимок и его событие остались как были
+        assertThat(updated.getEvents().get(EVENT_DATE).getVolunteerAt(0), sameInstance(ivan));
+        assertThat(updated.getContactsByTgUserName().get("ivan"), sameInstance(ivan));
+        assertThat(snapshot.getEvents().get(EVENT_DATE), sameInstance(event));
+        assertThat(event.getVolunteerAt(0), nullValue());
+        assertThat(snapshot.getContacts(), anEmptyMap());
+        // снаружи снимок не поменять
+        assertThrows(UnsupportedOperationException.class, () -> updated.getEvents().remove(EVENT_DATE));
+        assertThrows(UnsupportedOperationException.class, () -> updated.getContacts().clear());
+    }
+
+    @Test
+    void replacedVolunteerStaysInOldSnapshot() {
+        var ivan = Volunteer.builder().name("Иван").surname("Иванов").tgUserName("ivan").isOrganizer(false).build();
+        var snapshot = StorageSnapshot.empty().withVolunteer(ivan);
+
+        var organizer = ivan.toBuilder().isOrganizer(true).build();
+        var updated = snapshot.withReplacedVolunteer(ivan, organizer);
+
+        assertThat(updated.getContacts().get("Иван Иванов"), sameInstance(organizer));
+        assertThat(updated.getContactsByTgUserName().get("ivan"), sameInstance(organizer));
+        assertThat(snapshot.getContacts().get("Иван Иванов"), sameInstance(ivan));
+        assertThat(ivan.getIsOrganizer(), equalTo(false));
+    }
+}
@@ -0,0 +1,181 @@
+package telegram.bot.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import telegram.bot.config.BotConfiguration;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static telegram.bot.storage.StorageFixture.*;
+
+class StorageTest {
+    // фоновый сброс очереди в тестах не мешает - очередь сбрасывается явно
+    private static final long FLUSH_INTERVAL_ms = 3_600_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void lostWriteReleasesOnlyItsSlot() throws Exception {
+        var sheet = newSheet();
+        var writeBehind = new WriteBehindStorageUtils(sheet, FLUSH_INTERVAL_ms, 1000);
+        var storage = newStorage(writeBehind);
+        var ivan = storage.getVolunteerByTgUserName("ivan");
+        var petr = storage.getVolunteerByTgUserName("petr");
+
+        // двое одновременно занимают одну позицию - достается она одному
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(2);
+        var ivanReservation = executor.submit(() -> {
+            start.await();
+            return storage.reserveParticipation(participation(ivan, 2));
+        });
+        var petrReservation = executor.submit(() -> {
+            start.await();
+            return storage.reserveParticipation(participation(petr, 2));
+        });
+        start.countDown();
+        var isIvanWinner = Objects.nonNull(ivanReservation.get());
+        assertThat(Stream.of(ivanReservation.get(), petrReservation.get()).filter(Objects::nonNull).count(), equalTo(1L));
+        executor.shutdown();
+        var winner = isIvanWinner ? ivan : petr;
+        var loser = isIvanWinner ? petr : ivan;
+        assertThat(storage.getParticipation(EVENT_DATE, 2).getVolunteer(), sameInstance(winner));
+        // проигравший занимает соседнюю позицию, его запись стоит в той же очереди
+        assertThat(storage.reserveParticipation(participation(loser, 3)), notNullValue());
+
+        // таблица окончательно отвергает запись победителя
+        sheet.rejectedRanges.add(RangeRef.parse("R2C2"));
+        writeBehind.flush();
+
+        // освобождается только позиция потерянной записи (откат идет в отдельном потоке)
+        for (int attempt = 0; attempt < 100 && Objects.nonNull(storage.getParticipation(EVENT_DATE, 2).getVolunteer()); attempt++)
+            Thread.sleep(50);
+        assertThat(storage.getParticipation(EVENT_DATE, 2).getVolunteer(), nullValue());
+        assertThat(storage.getParticipation(EVENT_DATE, 3).getVolunteer(), sameInstance(loser));
+        assertThat(sheet.getValue(VOLUNTEERS, "R3C2"), equalTo(loser.getFullName()));
+    }
+
+    @Test
+    void reloadKeepsQueuedWrites() {
+        var sheet = newSheet();
+        var writeBehind = new WriteBehindStorageUtils(sheet, FLUSH_INTERVAL_ms, 1000);
+        var storage = newStorage(writeBehind);
+        var ivan = storage.getVolunteerByTgUserName("ivan");
+        assertThat(storage.reserveParticipation(participation(ivan, 2)), notNullValue());
+
+        // таблица недоступна - запись остается в очереди
+        sheet.writeFailures.add(new RuntimeException("503 Service Unavailable"));
+        assertThrows(RuntimeException.class, writeBehind::flush);
+        assertThat(writeBehind.getPendingWritesCount(), equalTo(1));
+
+        // перезагрузка кэша из таблицы видит принятую запись, позиция не освобождается для второй брони
+        storage.loadDataFromStorage();
+        assertThat(storage.getParticipation(EVENT_DATE, 2).getVolunteer().getFullName(), equalTo("Иван Иванов"));
+        assertThat(storage.reserveParticipation(participation(storage.getVolunteerByTgUserName("petr"), 2)), nullValue());
+    }
+
+    @Test
+    void organizerIsMarkedOnCopyOfVolunteer() {
+        var sheet = newSheet();
+        var storage = newStorage(sheet);
+        var ivan = storage.getVolunteerByTgUserName("ivan");
+        var publishedSnapshot = storage.snapshot;
+
+        // Ивана записали Организатором прямо в таблице
+        sheet.writesValues(VOLUNTEERS, "R4C1", List.of(List.of("Организатор", "Иван Иванов")));
+        storage.loadDataFromStorage();
+
+        var organizer = storage.getVolunteerByTgUserName("ivan");
+        assertThat(organizer.getIsOrganizer(), equalTo(true));
+        assertThat(storage.getParticipation(EVENT_DATE, 4).getVolunteer(), sameInstance(organizer));
+        assertThat(sheet.readValuesRange(CONTACTS, "R2C6", "R2C6"), equalTo(List.of(List.of("true"))));
+        // волонтер опубликованного раньше снимка не изменился
+        assertThat(organizer, not(sameInstance(ivan)));
+        assertThat(ivan.getIsOrganizer(), equalTo(false));
+        assertThat(publishedSnapshot.getContacts().get("Иван Иванов").getIsOrganizer(), equalTo(false));
+    }
+
+    @Test
+    void reloadReusesUnchangedEventsAndContacts() {
+        var sheet = newSheet();
+        var nextDate = EVENT_DATE.plusWeeks(1);
+        sheet.writeCellValue(VOLUNTEERS, "R1C3", nextDate.format(BotConfiguration.DATE_FORMATTER));
+        sheet.writesValues(VOLUNTEERS, "R2C2", List.of(List.of("Иван Иванов", "Петр Петров")));
+        var storage = newStorage(sheet);
+        var event = storage.snapshot.getEvents().get(EVENT_DATE);
+        var nextEvent = storage.snapshot.getEvents().get(nextDate);
+        var ivan = storage.getVolunteerByTgUserName("ivan");
+
+        // таблица не менялась - события и волонтеры остаются теми же объектами
+        storage.loadDataFromStorage();
+        assertThat(storage.snapshot.getEvents().get(EVENT_DATE), sameInstance(event));
+        assertThat(storage.snapshot.getEvents().get(nextDate), sameInstance(nextEvent));
+        assertThat(storage.getVolunteerByTgUserName("ivan"), sameInstance(ivan));
+
+        // поменялась ячейка одного события - пересобирается только оно
+        sheet.writeCellValue(VOLUNTEERS, "R3C3", "Иван Иванов");
+        storage.loadDataFromStorage();
+        assertThat(storage.snapshot.getEvents().get(EVENT_DATE), sameInstance(event));
+        assertThat(storage.snapshot.getEvents().get(nextDate), not(sameInstance(nextEvent)));
+        assertThat(storage.getParticipation(nextDate, 3).getVolunteer(), sameInstance(ivan));
+        assertThat(storage.getParticipation(nextDate, 2).getVolunteer().getFullName(), equalTo("Петр Петров"));
+    }
+
+    @Test
+    void warmStartFileForOtherRangesFallsBackToSheet() {
+        var sheet = newSheet();
+        var warmStartFile = new WarmStartSnapshotFile(tempDir.resolve("warm-start.bin").toString());
+        // файл сохранен при других настройках листов
+        warmStartFile.save(sheet.getSheetLastUpdateTime(), List.of(SheetRange.wholeSheet("Другой лист")), List.of(List.of()));
+
+        var storage = newStorage(sheet, warmStartFile);
+        assertThat(storage.getVolunteers().size(), equalTo(2));
+        assertThat(storage.reserveParticipation(participation(storage.getVolunteerByTgUserName("ivan"), 2)), notNullValue());
+        // загрузка из таблицы перезаписала файл под текущие диапазоны
+        assertThat(warmStartFile.load(storage.getStorageRanges()).getRanges().size(), equalTo(storage.getStorageRanges().size() + 1));
+
+        // в файле нет окна матрицы волонтеров - он тоже не подходит
+        var storageRanges = storage.getStorageRanges();
+        warmStartFile.save(sheet.getSheetLastUpdateTime(), storageRanges, sheet.readValuesRanges(storageRanges));
+        sheet.sheetLastUpdateTimeGate = new CountDownLatch(1);
+        var loading = CompletableFuture.supplyAsync(() -> newStorage(sheet, warmStartFile));
+        // без подходящего файла хранилище ждет загрузки из таблицы
+        assertThrows(TimeoutException.class, () -> loading.get(200, TimeUnit.MILLISECONDS));
+        sheet.sheetLastUpdateTimeGate.countDown();
+        assertThat(loading.join().getParticipation(EVENT_DATE, 2).getVolunteer().getFullName(), equalTo("Иван Иванов"));
+    }
+
+    @Test
+    void writesWaitForWarmSnapshotRevalidation() throws Exception {
+        var sheet = newSheet();
+        var warmStartFile = new WarmStartSnapshotFile(tempDir.resolve("warm-start.bin").toString());
+        newStorage(sheet, warmStartFile);
+        // после сохранения файла позицию заняли прямо в таблице
+        sheet.writeCellValue(VOLUNTEERS, "R2C2", "Петр Петров");
+
+        // сверка с таблицей задерживается - кэш из файла уже читается, но записи ждут
+        sheet.sheetLastUpdateTimeGate = new CountDownLatch(1);
+        var storage = newStorage(sheet, warmStartFile);
+        assertThat(storage.getParticipation(EVENT_DATE, 2).getVolunteer(), nullValue());
+        var ivan = storage.getVolunteerByTgUserName("ivan");
+        var reservation = CompletableFuture.supplyAsync(() -> storage.reserveParticipation(participation(ivan, 2)));
+        assertThrows(TimeoutException.class, () -> reservation.get(200, TimeUnit.MILLISECONDS));
+
+        // сверка нашла изменение и перечитала таблицу: по устаревшему файлу позицию не занять
+        sheet.sheetLastUpdateTimeGate.countDown();
+        assertThat(reservation.get(5, TimeUnit.SECONDS), nullValue());
+        assertThat(storage.getParticipation(EVENT_DATE, 2).getVolunteer().getFullName(), equalTo("Петр Петров"));
+    }
+}
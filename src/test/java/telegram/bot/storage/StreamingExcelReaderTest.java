@@ -0,0 +1,43 @@
+package telegram.bot.storage;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class StreamingExcelReaderTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readRangesFromOnePass() throws Exception {
+        var path = tempDir.resolve("storage.xlsx").toString();
+        try (var workbook = new XSSFWorkbook(); var outputStream = new FileOutputStream(path)) {
+            var sheet = workbook.createSheet("Контакты");
+            sheet.createRow(0).createCell(0).setCellValue("ФИО");
+            var row = sheet.createRow(1);
+            row.createCell(0).setCellValue("Иван Иванов");
+            row.createCell(2).setCellValue("123456789");
+            sheet.createRow(2).createCell(1).setCellValue("@petr");
+            sheet.createRow(5).createCell(0).setCellValue("за диапазоном");
+            workbook.createSheet("Роли").createRow(0).createCell(0).setCellValue("Организатор");
+            workbook.write(outputStream);
+        }
+
+        var values = new StreamingExcelReader(path).read(List.of(
+                SheetRange.of("Контакты", "R2C1", "R3C3"),
+                SheetRange.of("Роли", "R1C1", "C1"),
+                SheetRange.wholeSheet("Контакты")));
+
+        assertThat(values.get(0), equalTo(List.of(List.of("Иван Иванов", "", "123456789"), List.of("", "@petr"))));
+        assertThat(values.get(1), equalTo(List.of(List.of("Организатор"))));
+        assertThat(values.get(2).size(), equalTo(6));
+        assertThat(values.get(2).get(5), equalTo(List.of("за диапазоном")));
+    }
+}
@@ -0,0 +1,42 @@
+package telegram.bot.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class WarmStartSnapshotFileTest {
+    private static final LocalDateTime SHEET_LAST_UPDATE_TIME = LocalDateTime.of(2023, 11, 11, 9, 0);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void fileIsLoadedOnlyForSameRanges() throws Exception {
+        var path = tempDir.resolve("warm-start.bin");
+        var file = new WarmStartSnapshotFile(path.toString());
+        var ranges = List.of(SheetRange.of("Контакты", "R2C1", "C7"), SheetRange.of("Роли", "R1C1", "C1"));
+        var window = SheetRange.of("Волонтеры", "R2C2", "R3C5");
+        var values = List.of(List.of(List.of("Иван Иванов", "ivan")), List.of(List.of("Координатор")), List.of(List.of("", "Петр Петров")));
+        file.save(SHEET_LAST_UPDATE_TIME, List.of(ranges.get(0), ranges.get(1), window), values);
+
+        // производный диапазон после запрошенных сохраняется вместе с ними
+        var content = file.load(ranges);
+        assertThat(content.getSheetLastUpdateTime(), equalTo(SHEET_LAST_UPDATE_TIME));
+        assertThat(content.getRanges(), equalTo(List.of(ranges.get(0).toString(), ranges.get(1).toString(), window.toString())));
+        assertThat(content.getValues(), equalTo(values));
+
+        // настройки листов поменялись - файл не подходит
+        assertThat(file.load(List.of(SheetRange.of("Контакты", "R3C1", "C7"), ranges.get(1))), nullValue());
+        // поврежденный файл не подходит
+        Files.write(path, new byte[]{1, 2, 3});
+        assertThat(file.load(ranges), nullValue());
+    }
+}
@@ -0,0 +1,81 @@
+package telegram.bot.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WriteBehindStorageUtilsTest {
+    // фоновый сброс в тестах не мешает - очередь сбрасывается явно
+    private static final long FLUSH_INTERVAL_ms = 3_600_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void transientErrorsAreRetriedWithoutLosingWrites() {
+        var sheet = new FakeStorageUtils();
+        var writeLogFile = tempDir.resolve("write-behind.log").toString();
+        var writeBehind = new WriteBehindStorageUtils(sheet, FLUSH_INTERVAL_ms, 1000, writeLogFile);
+        writeBehind.writeCellValue("Волонтеры", "R3C2", "Иван Иванов");
+
+        // долгий сбой таблицы: попыток больше, чем прежний предел, запись остается в очереди и в файле очереди
+        for (int attempt = 0; attempt < 10; attempt++) {
+            sheet.writeFailures.add(new RuntimeException("429 Too Many Requests"));
+            assertThrows(RuntimeException.class, writeBehind::flush);
+        }
+        assertThat(writeBehind.getPendingWritesCount(), equalTo(1));
+        assertThat(writeBehind.getFailedWrites(), empty());
+        assertThat(new WriteBehindStorageUtils(sheet, FLUSH_INTERVAL_ms, 1000, writeLogFile).getPendingWritesCount(), equalTo(1));
+
+        writeBehind.flush();
+        assertThat(sheet.getValue("Волонтеры", "R3C2"), equalTo("Иван Иванов"));
+        assertThat(writeBehind.getPendingWritesCount(), equalTo(0));
+        assertThat(new WriteBehindStorageUtils(sheet, FLUSH_INTERVAL_ms, 1000, writeLogFile).getPendingWritesCount(), equalTo(0));
+    }
+
+    @Test
+    void rejectedWriteIsDroppedAndOthersAreWritten() {
+        var sheet = new FakeStorageUtils();
+        sheet.rejectedRanges.add(RangeRef.parse("R3C200"));
+        var writeBehind = new WriteBehindStorageUtils(sheet, FLUSH_INTERVAL_ms, 1000, tempDir.resolve("write-behind.log").toString());
+        writeBehind.writeCellValue("Волонтеры", "R3C2", "Иван Иванов");
+        writeBehind.writeCellValue("Волонтеры", "R3C200", "Петр Петров");
+
+        writeBehind.flush();
+        assertThat(sheet.getValue("Волонтеры", "R3C2"), equalTo("Иван Иванов"));
+        assertThat(writeBehind.getPendingWritesCount(), equalTo(0));
+        assertThat(writeBehind.getFailedWrites().size(), equalTo(1));
+        assertThat(writeBehind.getFailedWrites().get(0).range(), equalTo(RangeRef.parse("R3C200")));
+    }
+
+    @Test
+    void sheetEditBeforeOwnFlushIsReported() {
+        var sheet = new FakeStorageUtils();
+        var writeBehind = new WriteBehindStorageUtils(sheet, FLUSH_INTERVAL_ms, 1000);
+        writeBehind.readValuesRanges(List.of());
+        assertThat(writeBehind.getSheetLastUpdateTime(), equalTo(LocalDateTime.MIN));
+
+        // собственный сброс очереди кэш не устаревает
+        writeBehind.writeCellValue("Волонтеры", "R3C2", "Иван Иванов");
+        writeBehind.flush();
+        assertThat(writeBehind.getSheetLastUpdateTime(), equalTo(LocalDateTime.MIN));
+
+        // правка руками перед нашим сбросом не прячется за ним
+        sheet.editByHand();
+        writeBehind.writeCellValue("Волонтеры", "R4C2", "Петр Петров");
+        writeBehind.flush();
+        assertThat(writeBehind.getSheetLastUpdateTime(), equalTo(sheet.getSheetLastUpdateTime()));
+
+        // после перечитывания таблицы изменение учтено
+        writeBehind.readValuesRanges(List.of());
+        assertThat(writeBehind.getSheetLastUpdateTime(), equalTo(LocalDateTime.MIN));
+    }
+}
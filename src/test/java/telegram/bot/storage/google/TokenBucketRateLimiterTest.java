@@ -0,0 +1,46 @@
+package telegram.bot.storage.google;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class TokenBucketRateLimiterTest {
+    private long nowNanos = 0;
+
+    @Test
+    void burstIsSmallAndRefillKeepsMinuteQuota() {
+        var rateLimiter = new TokenBucketRateLimiter(60, () -> nowNanos);
+        assertThat(rateLimiter.getCapacity(), equalTo(6.0));
+        for (int request = 0; request < 6; request++) assertThat(rateLimiter.reserve(), equalTo(0L));
+        // ведро пусто: следующий запрос ждет токен, который пополнение (54 в минуту) дает за 60/54 секунды
+        assertThat(rateLimiter.reserve(), greaterThan(TimeUnit.SECONDS.toNanos(1)));
+
+        // за 5 секунд набирается 4.5 токена, один из них уже занят ожидающим запросом
+        nowNanos += TimeUnit.SECONDS.toNanos(5);
+        assertThat(rateLimiter.getAvailableTokens(), closeTo(3.5, 1e-6));
+        nowNanos += TimeUnit.MINUTES.toNanos(1);
+        assertThat(rateLimiter.getAvailableTokens(), equalTo(6.0));
+    }
+
+    @Test
+    void anyMinuteHoldsNoMoreThanQuota() {
+        var rateLimiter = new TokenBucketRateLimiter(60, () -> nowNanos);
+        // запросы идут один за другим без пауз, каждый - как только ограничитель его пропустит
+        var minuteEndNanos = TimeUnit.MINUTES.toNanos(1);
+        int requestsInMinute = 0;
+        while (true) {
+            var sendTimeNanos = nowNanos + rateLimiter.reserve();
+            if (sendTimeNanos >= minuteEndNanos) break;
+            nowNanos = sendTimeNanos;
+            requestsInMinute++;
+        }
+        assertThat(requestsInMinute, lessThanOrEqualTo(60));
+        assertThat(requestsInMinute, greaterThan(50));
+    }
+}